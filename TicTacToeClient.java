@@ -11,18 +11,29 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TicTacToeClient extends JFrame {
     // Network settings
     private static final int PORT = 5567;
     private static final String SERVER_ADDRESS = "localhost";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int FRAME_INTERVAL_MS = 16;
+    private static final int CHAT_CAPACITY = 500;
+    private static final int CHAT_ROW_HEIGHT = 20;
+    private static final int[][] WIN_LINES = {
+        {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, // Rows
+        {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, // Columns
+        {0, 4, 8}, {2, 4, 6}             // Diagonals
+    };
     
     // Network components
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private Transport connection; // Null while disconnected
+    private final Callable<Transport> connector; // Opens a TCP or in-process connection
     private String clientId;
+    private String sessionToken; // Lets a reconnect resume the same server-side session
+    private String freshSessionToken; // Token for the identity issued on this connection
     private String gameId;
     private char marker; // 'X' or 'O'
     private String playerName = "";
@@ -34,9 +45,15 @@ public class TicTacToeClient extends JFrame {
     private int wins = 0;
     private int losses = 0;
     private int ties = 0;
-    private char[] board = new char[9];
+    private char[] board = new char[9]; // What is drawn: the server's board plus any predicted move
+    private char[] serverBoard = new char[9]; // Last authoritative board from the server
     private int[] winningLine = null;
     
+    // Optimistic move prediction; a move is shown at once and reconciled against the server
+    private int moveSeq = 0;
+    private int pendingMoveSeq = 0; // 0 when no prediction is outstanding
+    private int pendingMovePosition = -1;
+    
     // UI Theme 
     private ThemeManager themeManager;
     private enum UIMode { LIGHT, DARK }
@@ -44,16 +61,26 @@ public class TicTacToeClient extends JFrame {
     
     // Sound settings
     private boolean soundEnabled = true;
-    private float soundVolume = 0.7f; // 0.0 to 1.0
+    private volatile float soundVolume = 0.7f; // 0.0 to 1.0
+    private SoundEngine soundEngine;
     
     // Animation settings
     private boolean animationsEnabled = true;
     private int animationSpeed = 300; // ms
     
     // Reconnection
-    private java.util.Timer reconnectTimer; 
+    private ConnectionManager connectionManager;
     private int reconnectAttempts = 0;
     private static final int MAX_RECONNECT_ATTEMPTS = 5;
+    private static final long RECONNECT_BASE_DELAY_MS = 1000;
+    private static final long RECONNECT_MAX_DELAY_MS = 30000;
+    
+    // One connect/backoff thread shared by every client window in this JVM
+    private static final ScheduledExecutorService connectionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "client-connection");
+        t.setDaemon(true);
+        return t;
+    });
     
     // UI Tabs
     private JTabbedPane tabbedPane;
@@ -68,7 +95,7 @@ public class TicTacToeClient extends JFrame {
     private GradientButton rematchButton;
     private ToggleButton soundToggleButton;
     private ToggleButton themeToggleButton;
-    private JTextArea chatArea;
+    private ChatTranscript chatTranscript;
     private JTextField chatInput;
     private JPanel connectionPanel;
     private StatusIndicator connectionStatus;
@@ -78,40 +105,62 @@ public class TicTacToeClient extends JFrame {
     // Lobby components
     private DefaultListModel<PlayerInfo> playerListModel;
     private JList<PlayerInfo> playerList;
-    private JTextArea lobbyChatArea;
+    private ChatTranscript lobbyChatTranscript;
     private JTextField lobbyChatInput;
     private JComboBox<String> lobbySelector;
+    private String rosterCursor; // Where the next GET_PLAYERS page starts, null when the roster is complete
+    private long rosterVersion = -1; // Roster version the list reflects, -1 until ROSTER_VERSION arrives
+    private boolean resuming; // RESUME sent; the roster sent to the throwaway identity until then is not ours
     private Map<String, String> lobbies = new HashMap<>(); // id -> name
     
+    // Decoded server messages waiting for the next EDT frame
+    private MessagePipeline messagePipeline;
+    
     // Animation
     private javax.swing.Timer gameTimer; 
     private float fadeInProgress = 0.0f;
     
+    // Game clocks as last reported by YOUR_TURN, counted down locally for display only
+    private JLabel clockLabel;
+    private javax.swing.Timer clockTimer;
+    private boolean clocksKnown = false;
+    private boolean myClockRunning = false;
+    private long myClockMs;
+    private long opponentClockMs;
+    private long clockSince;
+    
     // Profile components
     private JPanel statsPanel;
     private JLabel ratingLabel;
     private List<GameHistoryItem> gameHistory = new ArrayList<>();
     
     // Leaderboard
-    private List<PlayerInfo> leaderboardPlayers = new ArrayList<>();
+    private PagedListModel leaderboardModel;
     private JPanel leaderboardPanel;
+    private static final int LIST_ROW_HEIGHT = 28;
     
     // Player list in lobby
     private List<PlayerInfo> lobbyPlayers = new ArrayList<>();
     
     public TicTacToeClient() {
+        this(() -> Transport.connect(SERVER_ADDRESS, PORT, CONNECT_TIMEOUT_MS));
+    }
+    
+    public TicTacToeClient(Callable<Transport> connector) {
+        this.connector = connector;
         themeManager = new ThemeManager(currentMode);
         
         setTitle("Tic Tac Toe Multiplayer");
         setSize(900, 700);
         setMinimumSize(new Dimension(800, 600));
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        getContentPane().setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(getContentPane(), ThemeManager.ColorRole.BACKGROUND);
         setLayout(new BorderLayout());
         
         // Initialize board with empty spaces
         for (int i = 0; i < 9; i++) {
             board[i] = ' ';
+            serverBoard[i] = ' ';
         }
         
         // Get player name
@@ -126,6 +175,7 @@ public class TicTacToeClient extends JFrame {
         
         initializeGUI();
         initializeGameTimer();
+        clockTimer = new javax.swing.Timer(200, e -> updateClockLabel());
         
         // Add window listener to handle closing
         addWindowListener(new WindowAdapter() {
@@ -135,8 +185,12 @@ public class TicTacToeClient extends JFrame {
             }
         });
         
-        // Setup reconnect timer
-        reconnectTimer = new java.util.Timer();
+        // Setup connection manager and inbound message pipeline
+        connectionManager = new ConnectionManager();
+        messagePipeline = new MessagePipeline();
+        
+        // Decode sound effects up front so playing one never touches the disk
+        soundEngine = new SoundEngine();
         
         setLocationRelativeTo(null);
         setIconImage(createAppIcon().getImage());
@@ -148,7 +202,7 @@ public class TicTacToeClient extends JFrame {
             if (fadeInProgress < 1.0f) {
                 fadeInProgress += 0.025f;
                 if (fadeInProgress > 1.0f) fadeInProgress = 1.0f;
-                gamePanel.repaint();
+                gamePanel.repaintMarkers();
             } else {
                 ((javax.swing.Timer)e.getSource()).stop();
             }
@@ -181,23 +235,28 @@ public class TicTacToeClient extends JFrame {
         // Main container with margins
         JPanel mainContainer = new JPanel(new BorderLayout(5, 5));
         mainContainer.setBorder(new EmptyBorder(10, 10, 10, 10));
-        mainContainer.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(mainContainer, ThemeManager.ColorRole.BACKGROUND);
         
         // Header panel (top)
         JPanel headerPanel = new JPanel(new BorderLayout());
-        headerPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(headerPanel, ThemeManager.ColorRole.BACKGROUND);
         
         // Left side: Status
         JPanel statusPanel = new JPanel(new BorderLayout());
-        statusPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(statusPanel, ThemeManager.ColorRole.BACKGROUND);
         statusLabel = new JLabel("Not connected to server");
         statusLabel.setFont(themeManager.getFont(ThemeManager.FontType.HEADING));
-        statusLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(statusLabel, ThemeManager.ColorRole.TEXT);
         statusPanel.add(statusLabel, BorderLayout.WEST);
+        clockLabel = new JLabel("");
+        clockLabel.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
+        clockLabel.setBorder(new EmptyBorder(0, 15, 0, 0));
+        themeManager.bindForeground(clockLabel, ThemeManager.ColorRole.TEXT);
+        statusPanel.add(clockLabel, BorderLayout.EAST);
         
         // Right side: Connection status
         connectionPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
-        connectionPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(connectionPanel, ThemeManager.ColorRole.BACKGROUND);
         connectionStatus = new StatusIndicator(StatusIndicator.Status.DISCONNECTED);
         connectionPanel.add(connectionStatus);
         
@@ -209,7 +268,7 @@ public class TicTacToeClient extends JFrame {
         soundToggleButton.addActionListener(e -> toggleSound());
         
         JPanel controlsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
-        controlsPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(controlsPanel, ThemeManager.ColorRole.BACKGROUND);
         controlsPanel.add(soundToggleButton);
         controlsPanel.add(themeToggleButton);
         controlsPanel.add(connectionStatus);
@@ -219,15 +278,15 @@ public class TicTacToeClient extends JFrame {
         
         // Score panel
         JPanel scorePanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-        scorePanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(scorePanel, ThemeManager.ColorRole.BACKGROUND);
         scoreLabel = new JLabel("Games: 0   Wins: 0   Losses: 0   Ties: 0");
         scoreLabel.setFont(themeManager.getFont(ThemeManager.FontType.HEADING_SMALL));
-        scoreLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(scoreLabel, ThemeManager.ColorRole.TEXT);
         scorePanel.add(scoreLabel);
         
         // Combine header elements
         JPanel topPanel = new JPanel(new BorderLayout());
-        topPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(topPanel, ThemeManager.ColorRole.BACKGROUND);
         topPanel.add(headerPanel, BorderLayout.NORTH);
         topPanel.add(scorePanel, BorderLayout.SOUTH);
         topPanel.setBorder(new EmptyBorder(0, 0, 10, 0));
@@ -237,8 +296,8 @@ public class TicTacToeClient extends JFrame {
         // Create the tabbed pane for different views
         tabbedPane = new JTabbedPane();
         tabbedPane.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        tabbedPane.setBackground(themeManager.getBackgroundColor());
-        tabbedPane.setForeground(themeManager.getTextColor());
+        themeManager.bindBackground(tabbedPane, ThemeManager.ColorRole.BACKGROUND);
+        themeManager.bindForeground(tabbedPane, ThemeManager.ColorRole.TEXT);
         
         // Game Tab
         JPanel gameTab = createGameTab();
@@ -249,7 +308,7 @@ public class TicTacToeClient extends JFrame {
         tabbedPane.addTab("Lobby", lobbyTab);
         
         // Leaderboard Tab
-        JScrollPane leaderboardTab = createLeaderboardTab();
+        JPanel leaderboardTab = createLeaderboardTab();
         tabbedPane.addTab("Leaderboard", leaderboardTab);
         
         // Profile Tab
@@ -267,14 +326,14 @@ public class TicTacToeClient extends JFrame {
     
     private JPanel createGameTab() {
         JPanel gameTabPanel = new JPanel(new BorderLayout(10, 10));
-        gameTabPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(gameTabPanel, ThemeManager.ColorRole.BACKGROUND);
         
         // Game Board Panel (center)
         gamePanel = new GameBoardPanel();
         
         // Add padding around game board
         JPanel gameBoardContainer = new JPanel(new BorderLayout());
-        gameBoardContainer.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(gameBoardContainer, ThemeManager.ColorRole.BACKGROUND);
         gameBoardContainer.add(gamePanel, BorderLayout.CENTER);
         gameBoardContainer.setBorder(new EmptyBorder(10, 10, 10, 10));
         
@@ -286,7 +345,7 @@ public class TicTacToeClient extends JFrame {
         splitPane.setResizeWeight(0.7);
         splitPane.setDividerSize(5);
         splitPane.setBorder(null);
-        splitPane.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(splitPane, ThemeManager.ColorRole.BACKGROUND);
         
         gameTabPanel.add(splitPane, BorderLayout.CENTER);
         return gameTabPanel;
@@ -294,28 +353,28 @@ public class TicTacToeClient extends JFrame {
     
     private JPanel createLobbyTab() {
         JPanel lobbyTabPanel = new JPanel(new BorderLayout(10, 10));
-        lobbyTabPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(lobbyTabPanel, ThemeManager.ColorRole.BACKGROUND);
         lobbyTabPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
         
         // Top panel for lobby selection
         JPanel lobbySelectionPanel = new JPanel(new BorderLayout(5, 0));
-        lobbySelectionPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(lobbySelectionPanel, ThemeManager.ColorRole.BACKGROUND);
         
         JLabel lobbyLabel = new JLabel("Select Lobby:");
         lobbyLabel.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        lobbyLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(lobbyLabel, ThemeManager.ColorRole.TEXT);
         
         lobbySelector = new JComboBox<>();
         lobbySelector.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        lobbySelector.setBackground(themeManager.getComponentBackgroundColor());
-        lobbySelector.setForeground(themeManager.getTextColor());
+        themeManager.bindBackground(lobbySelector, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        themeManager.bindForeground(lobbySelector, ThemeManager.ColorRole.TEXT);
         lobbySelector.addActionListener(e -> {
             if (lobbySelector.getSelectedItem() != null) {
                 String selected = lobbySelector.getSelectedItem().toString();
                 for (Map.Entry<String, String> entry : lobbies.entrySet()) {
                     if (entry.getValue().equals(selected)) {
-                        if (out != null) {
-                            out.println("JOIN_LOBBY:" + entry.getKey());
+                        if (connection != null) {
+                            connection.send("JOIN_LOBBY:" + entry.getKey());
                         }
                         break;
                     }
@@ -326,8 +385,8 @@ public class TicTacToeClient extends JFrame {
         JButton refreshLobbiesButton = new JButton("⟳");
         refreshLobbiesButton.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
         refreshLobbiesButton.addActionListener(e -> {
-            if (out != null) {
-                out.println("LIST_LOBBIES");
+            if (connection != null) {
+                connection.send("LIST_LOBBIES");
             }
         });
         
@@ -342,42 +401,48 @@ public class TicTacToeClient extends JFrame {
         
         // Player list (left)
         JPanel playerListPanel = new JPanel(new BorderLayout());
-        playerListPanel.setBackground(themeManager.getBackgroundColor());
-        playerListPanel.setBorder(new TitledBorder(new LineBorder(themeManager.getBorderColor()), "Players in Lobby"));
+        themeManager.bindBackground(playerListPanel, ThemeManager.ColorRole.BACKGROUND);
+        playerListPanel.setBorder(new TitledBorder(themeManager.createLineBorder(1), "Players in Lobby"));
         
         playerListModel = new DefaultListModel<>();
         playerList = new JList<>(playerListModel);
         playerList.setCellRenderer(new PlayerListCellRenderer());
-        playerList.setBackground(themeManager.getComponentBackgroundColor());
-        playerList.setForeground(themeManager.getTextColor());
+        playerList.setFixedCellHeight(LIST_ROW_HEIGHT);
+        playerList.setPrototypeCellValue(new PlayerInfo("", "Prototype Player Name", 0, 0, 0));
+        themeManager.bindBackground(playerList, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        themeManager.bindForeground(playerList, ThemeManager.ColorRole.TEXT);
         JScrollPane playerScrollPane = new JScrollPane(playerList);
         
+        // Fetch the next roster page when the user scrolls near the end
+        playerScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = (JScrollBar) e.getAdjustable();
+            if (rosterCursor != null && connection != null 
+                    && bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 5 * LIST_ROW_HEIGHT) {
+                connection.send("GET_PLAYERS:" + rosterCursor);
+                rosterCursor = null;
+            }
+        });
+        
         playerListPanel.add(playerScrollPane, BorderLayout.CENTER);
         
         // Lobby chat (right)
         JPanel lobbyChatPanel = new JPanel(new BorderLayout(0, 5));
-        lobbyChatPanel.setBackground(themeManager.getBackgroundColor());
-        lobbyChatPanel.setBorder(new TitledBorder(new LineBorder(themeManager.getBorderColor()), "Lobby Chat"));
-        
-        lobbyChatArea = new JTextArea();
-        lobbyChatArea.setEditable(false);
-        lobbyChatArea.setLineWrap(true);
-        lobbyChatArea.setWrapStyleWord(true);
-        lobbyChatArea.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        lobbyChatArea.setBackground(themeManager.getComponentBackgroundColor());
-        lobbyChatArea.setForeground(themeManager.getTextColor());
-        JScrollPane lobbyChatScrollPane = new JScrollPane(lobbyChatArea);
+        themeManager.bindBackground(lobbyChatPanel, ThemeManager.ColorRole.BACKGROUND);
+        lobbyChatPanel.setBorder(new TitledBorder(themeManager.createLineBorder(1), "Lobby Chat"));
+        
+        lobbyChatTranscript = new ChatTranscript(CHAT_CAPACITY);
+        JScrollPane lobbyChatScrollPane = lobbyChatTranscript.getScrollPane();
         
         JPanel lobbyChatInputPanel = new JPanel(new BorderLayout());
-        lobbyChatInputPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(lobbyChatInputPanel, ThemeManager.ColorRole.BACKGROUND);
         
         lobbyChatInput = new JTextField();
-        lobbyChatInput.setBorder(new LineBorder(themeManager.getBorderColor(), 1));
+        lobbyChatInput.setBorder(themeManager.createLineBorder(1));
         lobbyChatInput.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
         lobbyChatInput.addActionListener(e -> sendLobbyChatMessage());
         lobbyChatInput.setEnabled(false);
-        lobbyChatInput.setBackground(themeManager.getComponentBackgroundColor());
-        lobbyChatInput.setForeground(themeManager.getTextColor());
+        themeManager.bindBackground(lobbyChatInput, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        themeManager.bindForeground(lobbyChatInput, ThemeManager.ColorRole.TEXT);
         
         JButton lobbySendButton = new JButton("Send");
         lobbySendButton.addActionListener(e -> sendLobbyChatMessage());
@@ -400,63 +465,71 @@ public class TicTacToeClient extends JFrame {
         return lobbyTabPanel;
     }
     
-    private JScrollPane createLeaderboardTab() {
-        leaderboardPanel = new JPanel();
-        leaderboardPanel.setLayout(new BoxLayout(leaderboardPanel, BoxLayout.Y_AXIS));
-        leaderboardPanel.setBackground(themeManager.getBackgroundColor());
+    private JPanel createLeaderboardTab() {
+        leaderboardPanel = new JPanel(new BorderLayout(0, 10));
+        themeManager.bindBackground(leaderboardPanel, ThemeManager.ColorRole.BACKGROUND);
         leaderboardPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
         
+        JPanel headerPanel = new JPanel();
+        headerPanel.setLayout(new BoxLayout(headerPanel, BoxLayout.Y_AXIS));
+        themeManager.bindBackground(headerPanel, ThemeManager.ColorRole.BACKGROUND);
+        
         JLabel titleLabel = new JLabel("Top Players");
         titleLabel.setFont(themeManager.getFont(ThemeManager.FontType.HEADING));
         titleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-        titleLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(titleLabel, ThemeManager.ColorRole.TEXT);
         
         JButton refreshButton = new JButton("Refresh Leaderboard");
         refreshButton.setAlignmentX(Component.CENTER_ALIGNMENT);
         refreshButton.setBackground(themeManager.getPrimaryButtonColor());
         refreshButton.setForeground(Color.WHITE);
-        refreshButton.addActionListener(e -> {
-            if (out != null) {
-                out.println("GET_LEADERBOARD");
-            }
-        });
-        
-        leaderboardPanel.add(Box.createVerticalStrut(10));
-        leaderboardPanel.add(titleLabel);
-        leaderboardPanel.add(Box.createVerticalStrut(10));
-        leaderboardPanel.add(refreshButton);
-        leaderboardPanel.add(Box.createVerticalStrut(20));
-        
-        // Leaderboard will be populated when data is received from server
-        
-        JScrollPane scrollPane = new JScrollPane(leaderboardPanel);
+        refreshButton.addActionListener(e -> leaderboardModel.refresh());
+        
+        headerPanel.add(Box.createVerticalStrut(10));
+        headerPanel.add(titleLabel);
+        headerPanel.add(Box.createVerticalStrut(10));
+        headerPanel.add(refreshButton);
+        
+        // Rows are fetched a page at a time as they scroll into view
+        leaderboardModel = new PagedListModel("GET_LEADERBOARD");
+        JList<PlayerInfo> leaderboardList = new JList<>(leaderboardModel);
+        leaderboardList.setCellRenderer(new LeaderboardCellRenderer());
+        leaderboardList.setFixedCellHeight(LIST_ROW_HEIGHT);
+        leaderboardList.setPrototypeCellValue(new PlayerInfo("", "Prototype Player Name", 9999, 9999, 9999));
+        themeManager.bindBackground(leaderboardList, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        themeManager.bindForeground(leaderboardList, ThemeManager.ColorRole.TEXT);
+        
+        JScrollPane scrollPane = new JScrollPane(leaderboardList);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        scrollPane.setBorder(null);
+        scrollPane.setBorder(themeManager.createLineBorder(1));
+        
+        leaderboardPanel.add(headerPanel, BorderLayout.NORTH);
+        leaderboardPanel.add(scrollPane, BorderLayout.CENTER);
         
-        return scrollPane;
+        return leaderboardPanel;
     }
     
     private JPanel createProfileTab() {
         JPanel profileTabPanel = new JPanel(new BorderLayout(10, 10));
-        profileTabPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(profileTabPanel, ThemeManager.ColorRole.BACKGROUND);
         profileTabPanel.setBorder(new EmptyBorder(20, 20, 20, 20));
         
         // Profile header
         JPanel headerPanel = new JPanel(new BorderLayout());
-        headerPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(headerPanel, ThemeManager.ColorRole.BACKGROUND);
         
         JPanel profilePanel = new JPanel();
         profilePanel.setLayout(new BoxLayout(profilePanel, BoxLayout.Y_AXIS));
-        profilePanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(profilePanel, ThemeManager.ColorRole.BACKGROUND);
         
         JLabel nameLabel = new JLabel(playerName);
         nameLabel.setFont(themeManager.getFont(ThemeManager.FontType.HEADING));
-        nameLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(nameLabel, ThemeManager.ColorRole.TEXT);
         profilePanel.add(nameLabel);
         
         ratingLabel = new JLabel("Rating: 1200");  // Default value
         ratingLabel.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        ratingLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(ratingLabel, ThemeManager.ColorRole.TEXT);
         profilePanel.add(ratingLabel);
         
         // Profile picture placeholder
@@ -491,7 +564,7 @@ public class TicTacToeClient extends JFrame {
                 return new Dimension(80, 80);
             }
         };
-        avatarPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(avatarPanel, ThemeManager.ColorRole.BACKGROUND);
         
         headerPanel.add(avatarPanel, BorderLayout.WEST);
         headerPanel.add(profilePanel, BorderLayout.CENTER);
@@ -499,30 +572,30 @@ public class TicTacToeClient extends JFrame {
         // Stats panel
         statsPanel = new JPanel();
         statsPanel.setLayout(new BoxLayout(statsPanel, BoxLayout.Y_AXIS));
-        statsPanel.setBackground(themeManager.getComponentBackgroundColor());
-        statsPanel.setBorder(new TitledBorder(new LineBorder(themeManager.getBorderColor()), "Statistics"));
+        themeManager.bindBackground(statsPanel, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        statsPanel.setBorder(new TitledBorder(themeManager.createLineBorder(1), "Statistics"));
         
         // Add stats, will be updated when connected
         JLabel gamesPlayedLabel = new JLabel("Games Played: 0");
         gamesPlayedLabel.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        gamesPlayedLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(gamesPlayedLabel, ThemeManager.ColorRole.TEXT);
         statsPanel.add(gamesPlayedLabel);
         
         JLabel winRateLabel = new JLabel("Win Rate: 0%");
         winRateLabel.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        winRateLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(winRateLabel, ThemeManager.ColorRole.TEXT);
         statsPanel.add(winRateLabel);
         
         // Game history panel
         JPanel historyPanel = new JPanel();
         historyPanel.setLayout(new BoxLayout(historyPanel, BoxLayout.Y_AXIS));
-        historyPanel.setBackground(themeManager.getComponentBackgroundColor());
-        historyPanel.setBorder(new TitledBorder(new LineBorder(themeManager.getBorderColor()), "Recent Games"));
+        themeManager.bindBackground(historyPanel, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        historyPanel.setBorder(new TitledBorder(themeManager.createLineBorder(1), "Recent Games"));
         
         // This will be populated when we get data from server
         JLabel noGamesLabel = new JLabel("No games played yet.");
         noGamesLabel.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        noGamesLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(noGamesLabel, ThemeManager.ColorRole.TEXT);
         noGamesLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
         historyPanel.add(Box.createVerticalGlue());
         historyPanel.add(noGamesLabel);
@@ -533,15 +606,15 @@ public class TicTacToeClient extends JFrame {
         refreshStats.setBackground(themeManager.getPrimaryButtonColor());
         refreshStats.setForeground(Color.WHITE);
         refreshStats.addActionListener(e -> {
-            if (out != null) {
-                out.println("GET_STATS");
-                out.println("GET_HISTORY");
+            if (connection != null) {
+                connection.send("GET_STATS");
+                connection.send("GET_HISTORY");
             }
         });
         
         // Combine everything
         JPanel contentPanel = new JPanel(new BorderLayout(0, 10));
-        contentPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(contentPanel, ThemeManager.ColorRole.BACKGROUND);
         contentPanel.add(statsPanel, BorderLayout.NORTH);
         contentPanel.add(historyPanel, BorderLayout.CENTER);
         contentPanel.add(refreshStats, BorderLayout.SOUTH);
@@ -554,34 +627,28 @@ public class TicTacToeClient extends JFrame {
     
     private JPanel createChatPanel() {
         JPanel chatPanel = new JPanel(new BorderLayout(0, 10));
-        chatPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(chatPanel, ThemeManager.ColorRole.BACKGROUND);
         chatPanel.setBorder(new EmptyBorder(0, 0, 0, 0));
         
         JLabel chatLabel = new JLabel("Game Chat");
         chatLabel.setFont(themeManager.getFont(ThemeManager.FontType.HEADING_SMALL));
         chatLabel.setHorizontalAlignment(SwingConstants.CENTER);
-        chatLabel.setForeground(themeManager.getTextColor());
+        themeManager.bindForeground(chatLabel, ThemeManager.ColorRole.TEXT);
         chatPanel.add(chatLabel, BorderLayout.NORTH);
         
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        chatArea.setLineWrap(true);
-        chatArea.setWrapStyleWord(true);
-        chatArea.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        chatArea.setBackground(themeManager.getComponentBackgroundColor());
-        chatArea.setForeground(themeManager.getTextColor());
-        JScrollPane chatScrollPane = new JScrollPane(chatArea);
-        chatScrollPane.setBorder(new LineBorder(themeManager.getBorderColor(), 1));
+        chatTranscript = new ChatTranscript(CHAT_CAPACITY);
+        JScrollPane chatScrollPane = chatTranscript.getScrollPane();
+        chatScrollPane.setBorder(themeManager.createLineBorder(1));
         chatPanel.add(chatScrollPane, BorderLayout.CENTER);
         
         JPanel chatInputPanel = new JPanel(new BorderLayout());
-        chatInputPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(chatInputPanel, ThemeManager.ColorRole.BACKGROUND);
         
         chatInput = new JTextField();
-        chatInput.setBorder(new LineBorder(themeManager.getBorderColor(), 1));
+        chatInput.setBorder(themeManager.createLineBorder(1));
         chatInput.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
-        chatInput.setBackground(themeManager.getComponentBackgroundColor());
-        chatInput.setForeground(themeManager.getTextColor());
+        themeManager.bindBackground(chatInput, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+        themeManager.bindForeground(chatInput, ThemeManager.ColorRole.TEXT);
         chatInput.addActionListener(e -> sendChatMessage());
         chatInput.setEnabled(false);
         
@@ -600,7 +667,7 @@ public class TicTacToeClient extends JFrame {
     
     private JPanel createGameControlPanel() {
         JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
-        controlPanel.setBackground(themeManager.getBackgroundColor());
+        themeManager.bindBackground(controlPanel, ThemeManager.ColorRole.BACKGROUND);
         controlPanel.setBorder(new EmptyBorder(5, 0, 5, 0));
         
         connectButton = new GradientButton("Connect to Server");
@@ -627,44 +694,8 @@ public class TicTacToeClient extends JFrame {
     
     private void toggleTheme() {
         currentMode = (currentMode == UIMode.LIGHT) ? UIMode.DARK : UIMode.LIGHT;
+        // Bound components pick up the new palette and repaint themselves; nothing is relaid out
         themeManager.setMode(currentMode);
-        SwingUtilities.invokeLater(this::applyTheme);
-    }
-    
-    private void applyTheme() {
-        // Update main components
-        getContentPane().setBackground(themeManager.getBackgroundColor());
-        tabbedPane.setBackground(themeManager.getBackgroundColor());
-        tabbedPane.setForeground(themeManager.getTextColor());
-        
-        // Update game panel
-        gamePanel.setBackground(themeManager.getBoardBackgroundColor());
-        
-        // Update labels
-        statusLabel.setForeground(themeManager.getTextColor());
-        scoreLabel.setForeground(themeManager.getTextColor());
-        
-        // Update text components
-        chatArea.setBackground(themeManager.getComponentBackgroundColor());
-        chatArea.setForeground(themeManager.getTextColor());
-        chatInput.setBackground(themeManager.getComponentBackgroundColor());
-        chatInput.setForeground(themeManager.getTextColor());
-        
-        lobbyChatArea.setBackground(themeManager.getComponentBackgroundColor());
-        lobbyChatArea.setForeground(themeManager.getTextColor());
-        lobbyChatInput.setBackground(themeManager.getComponentBackgroundColor());
-        lobbyChatInput.setForeground(themeManager.getTextColor());
-        
-        // Update player list
-        playerList.setBackground(themeManager.getComponentBackgroundColor());
-        playerList.setForeground(themeManager.getTextColor());
-        
-        // Update panels
-        gameControlPanel.setBackground(themeManager.getBackgroundColor());
-        
-        // Repaint everything
-        repaint();
-        revalidate();
     }
     
     private void toggleSound() {
@@ -744,8 +775,8 @@ public class TicTacToeClient extends JFrame {
             String newName = nameField.getText().trim();
             if (!newName.isEmpty() && !newName.equals(playerName)) {
                 playerName = newName;
-                if (out != null && clientId != null) {
-                    out.println("NAME:" + playerName);
+                if (connection != null && clientId != null) {
+                    connection.send("NAME:" + playerName);
                 }
                 setTitle("Tic Tac Toe Multiplayer - " + playerName);
             }
@@ -753,116 +784,109 @@ public class TicTacToeClient extends JFrame {
     }
     
     private void sendChatMessage() {
-        if (chatInput.getText().trim().isEmpty() || out == null || !gameActive) {
+        if (chatInput.getText().trim().isEmpty() || connection == null || !gameActive) {
             return;
         }
         
         String message = chatInput.getText().trim();
-        out.println("GAME_CHAT:" + message);
+        connection.send("GAME_CHAT:" + message);
         addChatMessage("You", message);
         chatInput.setText("");
     }
     
     private void sendLobbyChatMessage() {
-        if (lobbyChatInput.getText().trim().isEmpty() || out == null) {
+        if (lobbyChatInput.getText().trim().isEmpty() || connection == null) {
             return;
         }
         
         String message = lobbyChatInput.getText().trim();
-        out.println("LOBBY_CHAT:" + message);
+        connection.send("LOBBY_CHAT:" + message);
         lobbyChatInput.setText("");
     }
     
     private void addChatMessage(String sender, String message) {
-        chatArea.append(sender + ": " + message + "\n");
-        // Scroll to bottom
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        chatTranscript.append(sender + ": " + message);
     }
     
     private void addLobbyChatMessage(String sender, String message) {
-        lobbyChatArea.append(sender + ": " + message + "\n");
-        // Scroll to bottom
-        lobbyChatArea.setCaretPosition(lobbyChatArea.getDocument().getLength());
+        lobbyChatTranscript.append(sender + ": " + message);
     }
     
     private void connectToServer() {
-        try {
-            socket = new Socket(SERVER_ADDRESS, PORT);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            
-            // Start a thread to listen for server messages
-            Thread networkThread = new Thread(this::listenForServerMessages);
-            networkThread.setDaemon(true);
-            networkThread.start();
-            
-            // Update connection status
-            connectionStatus.setStatus(StatusIndicator.Status.CONNECTED);
-            
-            statusLabel.setText("Connected to server. Click 'Find Game' to start.");
-            connectButton.setEnabled(false);
-            findGameButton.setEnabled(true);
-            lobbyChatInput.setEnabled(true);
-            
-            // Send player name
-            out.println("NAME:" + playerName);
-            
-            // Request lobby list
-            out.println("LIST_LOBBIES");
-            
-            // Request stats
-            out.println("GET_STATS");
-            
-            // Request leaderboard
-            out.println("GET_LEADERBOARD");
-            
-            // Set window title with player name
-            setTitle("Tic Tac Toe Multiplayer - " + playerName);
-            
-            // Stop any reconnect attempts
-            stopReconnectTimer();
-            reconnectAttempts = 0;
-            
-            playSound("connect");
-            
-        } catch (IOException e) {
+        reconnectAttempts = 0;
+        connectionManager.connectNow(true);
+    }
+    
+    // Runs on the EDT once the connection manager has an open connection
+    private void onConnected(Transport transport) {
+        connection = transport;
+        
+        // Start a thread to listen for server messages
+        Thread networkThread = new Thread(() -> listenForServerMessages(transport));
+        networkThread.setDaemon(true);
+        networkThread.start();
+        
+        // Reclaim our previous session (and any game in progress) if we had one
+        if (sessionToken != null) {
+            resuming = true;
+            connection.send("RESUME:" + sessionToken);
+        }
+        
+        statusLabel.setText("Connected to server. Click 'Find Game' to start.");
+        connectButton.setEnabled(false);
+        findGameButton.setEnabled(true);
+        lobbyChatInput.setEnabled(true);
+        
+        // Send player name
+        connection.send("NAME:" + playerName);
+        
+        // Request lobby list
+        connection.send("LIST_LOBBIES");
+        
+        // Request stats
+        connection.send("GET_STATS");
+        
+        // Request the first leaderboard page
+        leaderboardModel.refresh();
+        
+        // Set window title with player name
+        setTitle("Tic Tac Toe Multiplayer - " + playerName);
+        
+        reconnectAttempts = 0;
+        
+        playSound("connect");
+    }
+    
+    // Runs on the EDT when a connect attempt fails or times out
+    private void onConnectFailed(IOException e, boolean userInitiated) {
+        if (userInitiated) {
             JOptionPane.showMessageDialog(this, 
                 "Error connecting to server: " + e.getMessage(),
                 "Connection Error", JOptionPane.ERROR_MESSAGE);
-            statusLabel.setText("Failed to connect to server");
-            
-            // Start reconnect timer if not already running
-            if (reconnectAttempts < MAX_RECONNECT_ATTEMPTS) {
-                startReconnectTimer();
-            }
+        }
+        statusLabel.setText("Failed to connect to server");
+        
+        // Back off and retry if not already at max attempts
+        if (reconnectAttempts < MAX_RECONNECT_ATTEMPTS) {
+            startReconnectTimer();
+        } else {
+            connectionManager.publish(StatusIndicator.Status.DISCONNECTED);
         }
     }
     
     private void startReconnectTimer() {
-        connectionStatus.setStatus(StatusIndicator.Status.RECONNECTING);
-        reconnectTimer = new java.util.Timer();
-        reconnectTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                SwingUtilities.invokeLater(() -> {
-                    reconnectAttempts++;
-                    statusLabel.setText("Reconnecting... Attempt " + reconnectAttempts);
-                    connectToServer();
-                });
-            }
-        }, 5000);
+        reconnectAttempts++;
+        long delay = connectionManager.scheduleReconnect(reconnectAttempts);
+        statusLabel.setText("Reconnecting in " + (delay + 999) / 1000 + "s... Attempt " + reconnectAttempts);
     }
     
     private void stopReconnectTimer() {
-        if (reconnectTimer != null) {
-            reconnectTimer.cancel();
-            reconnectTimer = null;
-        }
+        connectionManager.cancel();
     }
     
     private void findGame() {
-        if (out != null) {
-            out.println("FIND_GAME");
+        if (connection != null) {
+            connection.send("FIND_GAME");
             statusLabel.setText("Finding a game...");
             findGameButton.setEnabled(false);
             chatInput.setEnabled(false);
@@ -874,8 +898,8 @@ public class TicTacToeClient extends JFrame {
     }
     
     private void requestRematch() {
-        if (out != null && gameId != null) {
-            out.println("REMATCH:" + gameId);
+        if (connection != null && gameId != null) {
+            connection.send("REMATCH:" + gameId);
             rematchButton.setEnabled(false);
             statusLabel.setText("Requesting rematch...");
             
@@ -884,83 +908,94 @@ public class TicTacToeClient extends JFrame {
     }
     
     private void makeMove(int position) {
-        if (gameActive && myTurn && board[position] == ' ') {
-            out.println("MOVE:" + position);
+        if (connection != null && gameActive && myTurn && pendingMoveSeq == 0 && isLegalMove(position)) {
+            // Show the move now and tag it so the server's answer can confirm or undo it
+            pendingMoveSeq = ++moveSeq;
+            pendingMovePosition = position;
+            connection.send("MOVE:" + position + ":" + pendingMoveSeq);
             
-            // Temporarily disable moves until server confirms
-            myTurn = false;
+            // Our clock stops and the opponent's starts; the next YOUR_TURN brings the exact figures
+            if (clocksKnown && myClockRunning) {
+                long now = System.currentTimeMillis();
+                myClockMs -= now - clockSince;
+                clockSince = now;
+                myClockRunning = false;
+            }
             
-            // Disable all buttons temporarily
+            myTurn = false;
+            board[position] = marker;
+            gamePanel.updateBoard();
             gamePanel.disableAllCells();
+            statusLabel.setText("Waiting for " + opponentName + "...");
             
             playSound("move");
         }
     }
     
+    // Local copy of the server's move rules, checked against the authoritative board
+    private boolean isLegalMove(int position) {
+        if (position < 0 || position >= serverBoard.length || serverBoard[position] != ' ') {
+            return false;
+        }
+        for (int[] line : WIN_LINES) {
+            char c = serverBoard[line[0]];
+            if (c != ' ' && c == serverBoard[line[1]] && c == serverBoard[line[2]]) {
+                return false; // The game is already decided
+            }
+        }
+        return true;
+    }
+    
+    // Rebuild the drawn board from the server's, re-applying the prediction if it has not landed yet
+    private void reconcileBoard() {
+        System.arraycopy(serverBoard, 0, board, 0, board.length);
+        if (pendingMoveSeq != 0 && serverBoard[pendingMovePosition] == ' ') {
+            board[pendingMovePosition] = marker;
+        }
+        gamePanel.updateBoard();
+    }
+    
+    private void clearPrediction() {
+        pendingMoveSeq = 0;
+        pendingMovePosition = -1;
+    }
+    
     private void playSound(String soundType) {
         if (!soundEnabled) return;
         
-        new Thread(() -> {
-            try {
-                String soundFile = "";
-                
-                switch (soundType) {
-                    case "move":
-                        soundFile = "/sounds/move.wav";
-                        break;
-                    case "win":
-                        soundFile = "/sounds/win.wav";
-                        break;
-                    case "lose":
-                        soundFile = "/sounds/lose.wav";
-                        break;
-                    case "tie":
-                        soundFile = "/sounds/tie.wav";
-                        break;
-                    case "connect":
-                        soundFile = "/sounds/connect.wav";
-                        break;
-                    case "disconnect":
-                        soundFile = "/sounds/disconnect.wav";
-                        break;
-                    case "search":
-                        soundFile = "/sounds/search.wav";
-                        break;
-                    case "button":
-                        soundFile = "/sounds/button.wav";
-                        break;
-                    case "error":
-                        soundFile = "/sounds/error.wav";
-                        break;
-                }
-                
-                // This would normally load the sound from resources
-                // For this example, we'll just print what sound would play
-                System.out.println("Playing sound: " + soundType + " (file: " + soundFile + ")");
-                
-            } catch (Exception e) {
-                System.err.println("Error playing sound: " + e.getMessage());
-            }
-        }).start();
+        soundEngine.play(soundType);
     }
     
-    private void listenForServerMessages() {
+    private void listenForServerMessages(Transport transport) {
         try {
             String message;
-            while ((message = in.readLine()) != null) {
-                System.out.println("Received from server: " + message);
-                processServerMessage(message);
+            while ((message = transport.receive()) != null) {
+                messagePipeline.submit(message);
             }
         } catch (IOException e) {
-            handleDisconnect();
+            // Fall through to disconnect handling
         }
+        handleDisconnect(transport);
     }
     
-    private void handleDisconnect() {
+    private void handleDisconnect(Transport transport) {
         SwingUtilities.invokeLater(() -> {
+            // Ignore connections that have already been replaced or closed on purpose
+            if (transport != connection) {
+                return;
+            }
+            transport.close();
+            connection = null;
+            
             statusLabel.setText("Disconnected from server");
             connectionStatus.setStatus(StatusIndicator.Status.DISCONNECTED);
-            resetGame();
+            if (sessionToken == null) {
+                resetGame();
+            } else {
+                // Keep the board; the game stays alive on the server until we resume
+                myTurn = false;
+                gamePanel.disableAllCells();
+            }
             connectButton.setEnabled(true);
             findGameButton.setEnabled(false);
             rematchButton.setEnabled(false);
@@ -976,31 +1011,85 @@ public class TicTacToeClient extends JFrame {
         });
     }
     
-    private void processServerMessage(String message) {
-        SwingUtilities.invokeLater(() -> {
-            if (message.startsWith("CONNECTED:")) {
-                clientId = message.substring(10);
+    // Runs on the EDT with every event decoded since the previous frame
+    private void applyEvents(List<ServerEvent> batch) {
+        // Board messages carry the full state, so only the newest one in a frame matters
+        int lastBoard = -1;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.get(i).type == ServerEvent.Type.BOARD) {
+                lastBoard = i;
+            }
+        }
+        
+        for (int i = 0; i < batch.size(); i++) {
+            ServerEvent event = batch.get(i);
+            if (event.type == ServerEvent.Type.BOARD && i != lastBoard) {
+                continue;
+            }
+            applyEvent(event);
+        }
+    }
+    
+    private void applyEvent(ServerEvent event) {
+        switch (event.type) {
+            case CONNECTED:
+                clientId = event.args[0];
+                freshSessionToken = event.args[1];
+                if (sessionToken == null) {
+                    sessionToken = freshSessionToken;
+                }
                 statusLabel.setText("Connected as: " + playerName);
-            } 
-            else if (message.startsWith("SERVER_INFO:")) {
-                String info = message.substring(12);
-                addSystemMessage("Server: " + info);
-            } 
-            else if (message.equals("WAITING")) {
+                break;
+                
+            case RESUMED:
+                clientId = event.args[0];
+                sessionToken = event.args[1] != null ? event.args[1] : sessionToken;
+                // Catch the roster up on what changed while we were away, or get it whole if that is too much
+                resuming = false;
+                connection.send("ROSTER_SYNC:" + rosterVersion);
+                statusLabel.setText(gameActive ? "Reconnected. Game resumed." : "Reconnected as: " + playerName);
+                if (gameActive) {
+                    chatInput.setEnabled(true);
+                }
+                break;
+                
+            case RESUME_FAILED:
+                // Previous session is gone; carry on as the fresh identity from CONNECTED
+                sessionToken = freshSessionToken;
+                resuming = false;
+                connection.send("ROSTER_SYNC:-1");
+                resetGame();
+                statusLabel.setText("Connected as: " + playerName);
+                break;
+                
+            case SERVER_INFO:
+                addSystemMessage("Server: " + event.args[0]);
+                break;
+                
+            case TOURNAMENT_NOTICE:
+                addSystemMessage(event.args[0]);
+                break;
+                
+            case RETRY_AFTER:
+                addSystemMessage(event.args[1] + ", will retry in about " + event.args[0] + "s");
+                break;
+                
+            case WAITING:
                 statusLabel.setText("Waiting for an opponent...");
-            } 
-            else if (message.startsWith("GAME_STARTED:")) {
-                // Format: GAME_STARTED:X:game_id:opponent_name or GAME_STARTED:O:game_id:opponent_name
-                String[] parts = message.split(":");
-                marker = parts[1].charAt(0);
-                gameId = parts[2];
-                opponentName = parts.length > 3 ? parts[3] : "Opponent";
+                break;
+                
+            case GAME_STARTED:
+                marker = event.args[0].charAt(0);
+                gameId = event.args[1];
+                opponentName = event.args[2];
                 
                 gameActive = true;
                 statusLabel.setText("Game started! You are '" + marker + "' vs " + opponentName);
+                clocksKnown = false;
+                updateClockLabel();
                 
                 // Clear chat
-                chatArea.setText("");
+                chatTranscript.clear();
                 chatInput.setEnabled(true);
                 
                 // Add system message to chat
@@ -1020,28 +1109,37 @@ public class TicTacToeClient extends JFrame {
                 gameTimer.start();
                 
                 playSound("connect");
-            } 
-            else if (message.equals("YOUR_TURN")) {
+                break;
+                
+            case YOUR_TURN:
+                // The server never hands the turn back while our move stands, so an open prediction was lost
+                if (pendingMoveSeq != 0) {
+                    clearPrediction();
+                    reconcileBoard();
+                }
                 myTurn = true;
                 statusLabel.setText("Your turn! (You are '" + marker + "')");
+                if (event.args != null && event.args.length == 2) {
+                    myClockMs = Long.parseLong(event.args[0]);
+                    opponentClockMs = Long.parseLong(event.args[1]);
+                    clockSince = System.currentTimeMillis();
+                    myClockRunning = true;
+                    clocksKnown = true;
+                    clockTimer.start();
+                    updateClockLabel();
+                }
                 
                 // Enable valid moves
                 gamePanel.enableValidMoves();
                 
                 playSound("button");
-            } 
-            else if (message.startsWith("BOARD:")) {
-                // Format: BOARD:XO OX OXO (spaces for empty cells)
-                String boardState = message.substring(6);
+                break;
                 
-                for (int i = 0; i < 9 && i < boardState.length(); i++) {
-                    char oldValue = board[i];
-                    char newValue = boardState.charAt(i);
-                    board[i] = newValue;
-                }
+            case BOARD:
+                System.arraycopy(event.cells, 0, serverBoard, 0, Math.min(serverBoard.length, event.cells.length));
                 
-                // Update the game board display
-                gamePanel.updateBoard();
+                // Update the game board display, keeping a prediction the server has not answered yet
+                reconcileBoard();
                 
                 // If it's my turn, enable buttons for valid moves
                 if (myTurn) {
@@ -1050,21 +1148,41 @@ public class TicTacToeClient extends JFrame {
                     // Disable all buttons when it's not my turn
                     gamePanel.disableAllCells();
                 }
-            } 
-            else if (message.startsWith("GAME_OVER:")) {
-                // Format: GAME_OVER:X:0-4-8 or GAME_OVER:O:2-4-6 or GAME_OVER:TIE
-                String[] parts = message.split(":");
-                String result = parts[1];
+                break;
+                
+            case MOVE_ACK:
+                // The BOARD that follows carries the move itself
+                if (Integer.parseInt(event.args[0]) == pendingMoveSeq) {
+                    clearPrediction();
+                }
+                break;
+                
+            case MOVE_REJECTED:
+                if (Integer.parseInt(event.args[0]) == pendingMoveSeq) {
+                    clearPrediction();
+                    reconcileBoard();
+                    statusLabel.setText("Move rejected: " + event.args[1]);
+                }
+                break;
+                
+            case GAME_OVER:
+                String result = event.args[0];
+                boolean onTime = event.args.length > 1 && event.args[1].equals("TIME");
+                clockTimer.stop();
+                if (clocksKnown) {
+                    // Freeze the display where the flag fell or the game ended
+                    long elapsed = System.currentTimeMillis() - clockSince;
+                    if (myClockRunning) myClockMs -= elapsed; else opponentClockMs -= elapsed;
+                    clockSince = System.currentTimeMillis();
+                }
                 gameActive = false;
                 myTurn = false;
+                clearPrediction();
+                updateClockLabel();
                 
                 // Get winning line if provided
-                if (parts.length > 2 && !result.equals("TIE")) {
-                    String[] lineIndices = parts[2].split("-");
-                    winningLine = new int[lineIndices.length];
-                    for (int i = 0; i < lineIndices.length; i++) {
-                        winningLine[i] = Integer.parseInt(lineIndices[i]);
-                    }
+                if (event.line != null) {
+                    winningLine = event.line;
                 }
                 
                 // Update game board to show winning line
@@ -1081,13 +1199,13 @@ public class TicTacToeClient extends JFrame {
                     playSound("tie");
                 } else if (result.charAt(0) == marker) {
                     wins++;
-                    statusLabel.setText("Game over: You won!");
-                    addSystemMessage("You won the game!");
+                    statusLabel.setText(onTime ? "Game over: You won on time!" : "Game over: You won!");
+                    addSystemMessage(onTime ? "Your opponent ran out of time. You won the game!" : "You won the game!");
                     playSound("win");
                 } else {
                     losses++;
-                    statusLabel.setText("Game over: You lost!");
-                    addSystemMessage("You lost the game.");
+                    statusLabel.setText(onTime ? "Game over: You lost on time!" : "Game over: You lost!");
+                    addSystemMessage(onTime ? "You ran out of time and lost the game." : "You lost the game.");
                     playSound("lose");
                 }
                 
@@ -1096,14 +1214,151 @@ public class TicTacToeClient extends JFrame {
                 findGameButton.setEnabled(true);
                 rematchButton.setEnabled(true);
                 chatInput.setEnabled(false);
-            } 
-            // Process other server messages...
-            // This is abbreviated to focus on the timer issue
-        });
+                break;
+                
+            case GAME_CHAT:
+                // Our own lines are already echoed locally as "You"; names are not unique, ids are
+                if (!event.args[0].equals(clientId)) {
+                    addChatMessage(event.args[1], event.args[2]);
+                }
+                break;
+                
+            case JOINED_LOBBY:
+                if (resuming) break;
+                playerListModel.clear();
+                rosterCursor = null;
+                rosterVersion = -1;
+                break;
+                
+            case ROSTER_VERSION:
+                if (resuming) break;
+                rosterVersion = Long.parseLong(event.args[0]);
+                break;
+                
+            case PLAYER_LIST:
+                if (resuming) break;
+                updateLobbyPlayers(event);
+                break;
+                
+            case PLAYER_LIST_MORE:
+                if (resuming) break;
+                rosterCursor = event.args[1];
+                break;
+                
+            case LOBBY_JOIN:
+                // Joiners sort somewhere in pages we may not have yet; show them once the roster is complete
+                if (!resuming && advanceRoster(Long.parseLong(event.args[1])) && rosterCursor == null) {
+                    addRosterPlayer(event.players[0]);
+                }
+                break;
+                
+            case LOBBY_LEAVE:
+                if (!resuming && advanceRoster(Long.parseLong(event.args[1]))) {
+                    removeRosterPlayer(event.args[0]);
+                }
+                break;
+                
+            case LOBBY_RENAME:
+                if (!resuming && advanceRoster(Long.parseLong(event.args[1]))) {
+                    renameRosterPlayer(event.players[0]);
+                }
+                break;
+                
+            case ROSTER_DELTA: {
+                // args: since, to, one change type per player: '+' join, '-' leave, '~' rename
+                long version = Long.parseLong(event.args[0]);
+                String types = event.args[2];
+                for (int i = 0; i < types.length(); i++) {
+                    if (!advanceRoster(++version)) continue;
+                    PlayerInfo changed = event.players[i];
+                    if (types.charAt(i) == '+') {
+                        if (rosterCursor == null) addRosterPlayer(changed);
+                    } else if (types.charAt(i) == '-') {
+                        removeRosterPlayer(changed.getId());
+                    } else {
+                        renameRosterPlayer(changed);
+                    }
+                }
+                break;
+            }
+                
+            case ROSTER_SNAPSHOT:
+                playerListModel.clear();
+                playerListModel.addAll(Arrays.asList(event.players));
+                rosterCursor = null;
+                rosterVersion = Long.parseLong(event.args[0]);
+                break;
+                
+            case LEADERBOARD_PAGE:
+                updateLeaderboard(event);
+                break;
+                
+            case LOBBY_CHAT:
+                // Lines from one frame are already batched by the transcript
+                addLobbyChatMessage(event.args[0], event.args[1]);
+                break;
+                
+            default:
+                // Other server messages are not shown yet
+                break;
+        }
+    }
+    
+    private void updateLeaderboard(ServerEvent event) {
+        leaderboardModel.applyPage(Integer.parseInt(event.args[0]), Integer.parseInt(event.args[1]), event.players);
+    }
+    
+    // A player who joined while this page was being fetched may already be listed
+    private void updateLobbyPlayers(ServerEvent event) {
+        List<PlayerInfo> added = new ArrayList<>(event.players.length);
+        for (PlayerInfo player : event.players) {
+            if (!containsPlayer(player.getId())) {
+                added.add(player);
+            }
+        }
+        playerListModel.addAll(added);
+    }
+    
+    private boolean containsPlayer(String playerId) {
+        return indexOfPlayer(playerId) >= 0;
+    }
+    
+    private int indexOfPlayer(String playerId) {
+        for (int i = 0; i < playerListModel.size(); i++) {
+            if (playerListModel.get(i).getId().equals(playerId)) return i;
+        }
+        return -1;
+    }
+    
+    private void addRosterPlayer(PlayerInfo player) {
+        if (!containsPlayer(player.getId())) {
+            playerListModel.addElement(player);
+        }
+    }
+    
+    private void removeRosterPlayer(String playerId) {
+        int index = indexOfPlayer(playerId);
+        if (index >= 0) {
+            playerListModel.remove(index);
+        }
+    }
+    
+    private void renameRosterPlayer(PlayerInfo renamed) {
+        int index = indexOfPlayer(renamed.getId());
+        if (index >= 0) {
+            playerListModel.get(index).setName(renamed.getName());
+            playerListModel.set(index, playerListModel.get(index));
+        }
     }
     
-    private void updateLeaderboard(String leaderboardData) {
-        // Implementation for updating leaderboard
+    // True if a change at this version is new to the list. Changes up to ROSTER_VERSION are already in the
+    // first page, and the same change can arrive twice after a resume, as a missed message and in the delta.
+    private boolean advanceRoster(long version) {
+        if (rosterVersion < 0 || version <= rosterVersion) {
+            return false;
+        }
+        rosterVersion = version;
+        return true;
     }
     
     private void updateGameHistory(String historyData) {
@@ -1122,17 +1377,34 @@ public class TicTacToeClient extends JFrame {
                            "   Ties: " + ties);
     }
     
+    private void updateClockLabel() {
+        if (!clocksKnown) {
+            clockLabel.setText("");
+            return;
+        }
+        long elapsed = gameActive ? System.currentTimeMillis() - clockSince : 0;
+        long mine = myClockRunning ? myClockMs - elapsed : myClockMs;
+        long theirs = myClockRunning ? opponentClockMs : opponentClockMs - elapsed;
+        clockLabel.setText("You " + formatClock(mine) + "   " + opponentName + " " + formatClock(theirs));
+    }
+    
+    private static String formatClock(long ms) {
+        long seconds = (Math.max(0, ms) + 999) / 1000;
+        return seconds / 60 + ":" + (seconds % 60 < 10 ? "0" : "") + seconds % 60;
+    }
+    
     private void addSystemMessage(String message) {
-        if (chatArea != null) {
-            chatArea.append("System: " + message + "\n");
-            chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        if (chatTranscript != null) {
+            chatTranscript.append("System: " + message);
         }
     }
     
     private void resetBoard() {
         for (int i = 0; i < 9; i++) {
             board[i] = ' ';
+            serverBoard[i] = ' ';
         }
+        clearPrediction();
         winningLine = null;
         gamePanel.updateBoard();
         gamePanel.disableAllCells();
@@ -1145,39 +1417,710 @@ public class TicTacToeClient extends JFrame {
     }
     
     private void disconnect() {
-        if (out != null) {
-            out.println("QUIT");
+        stopReconnectTimer();
+        
+        if (connection != null) {
+            connection.send("QUIT");
+            connection.close();
         }
         
-        if (reconnectTimer != null) {
-            reconnectTimer.cancel();
-            reconnectTimer = null;
+        // Detach so the listener thread does not treat this as a dropped connection
+        connection = null;
+    }
+    
+    // Owns connect attempts and backoff so the EDT never blocks on a connect
+    private class ConnectionManager {
+        private final Random jitter = new Random();
+        private ScheduledFuture<?> pendingAttempt;
+        private long holdOffMs = 0; // Server's retry hint for the next reconnect, 0 if none
+        
+        public synchronized void connectNow(boolean userInitiated) {
+            cancel();
+            pendingAttempt = connectionExecutor.schedule(() -> attempt(userInitiated), 0, TimeUnit.MILLISECONDS);
+        }
+        
+        // Equal-jitter exponential backoff so clients dropped together do not retry together
+        public synchronized long scheduleReconnect(int attempt) {
+            cancel();
+            long ceiling = Math.min(RECONNECT_MAX_DELAY_MS, RECONNECT_BASE_DELAY_MS << Math.min(attempt - 1, 20));
+            long delay = ceiling / 2 + (long) (jitter.nextDouble() * (ceiling / 2));
+            if (holdOffMs > 0) {
+                // Spread the retries of everyone turned away together over one more hint's length
+                delay = Math.max(delay, holdOffMs + (long) (jitter.nextDouble() * holdOffMs));
+                holdOffMs = 0;
+            }
+            publish(StatusIndicator.Status.RECONNECTING);
+            pendingAttempt = connectionExecutor.schedule(() -> attempt(false), delay, TimeUnit.MILLISECONDS);
+            return delay;
         }
         
-        try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
-        } catch (IOException e) {
-            System.err.println("Error closing connections: " + e.getMessage());
+        // Network thread: the server asked for this long before the next attempt
+        public synchronized void holdOff(long ms) {
+            holdOffMs = ms;
+        }
+        
+        public synchronized void cancel() {
+            if (pendingAttempt != null) {
+                pendingAttempt.cancel(false);
+                pendingAttempt = null;
+            }
+        }
+        
+        public void publish(StatusIndicator.Status status) {
+            SwingUtilities.invokeLater(() -> connectionStatus.setStatus(status));
+        }
+        
+        // Runs on the connection executor
+        private void attempt(boolean userInitiated) {
+            publish(StatusIndicator.Status.CONNECTING);
+            try {
+                Transport transport = connector.call();
+                
+                publish(StatusIndicator.Status.CONNECTED);
+                SwingUtilities.invokeLater(() -> onConnected(transport));
+            } catch (Exception e) {
+                IOException failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                SwingUtilities.invokeLater(() -> onConnectFailed(failure, userInitiated));
+            }
+        }
+    }
+    
+    // Preloaded effects mixed on one audio thread; play() only enqueues an index
+    private class SoundEngine implements Runnable {
+        private final String[] EFFECTS = {
+            "move", "win", "lose", "tie", "connect", "disconnect", "search", "button", "error"
+        };
+        private final AudioFormat FORMAT = new AudioFormat(44100f, 16, 1, true, false);
+        private static final int MAX_VOICES = 4;
+        private static final int CHUNK_FRAMES = 441; // 10ms per mix pass
+        private static final long MERGE_WINDOW_NANOS = 60_000_000L;
+        
+        private final short[][] samples = new short[EFFECTS.length][];
+        private final ArrayBlockingQueue<Integer> requests = new ArrayBlockingQueue<>(16);
+        
+        // Voice pool: which effect each voice is playing, how far along, and when it started
+        private final int[] voiceEffect = new int[MAX_VOICES];
+        private final int[] voicePosition = new int[MAX_VOICES];
+        private final long[] voiceStarted = new long[MAX_VOICES];
+        private final long[] lastStarted = new long[EFFECTS.length];
+        
+        private final int[] mixBuffer = new int[CHUNK_FRAMES];
+        private final byte[] outBuffer = new byte[CHUNK_FRAMES * 2];
+        private SourceDataLine line;
+        
+        public SoundEngine() {
+            Arrays.fill(voiceEffect, -1);
+            Thread audioThread = new Thread(this, "client-audio");
+            audioThread.setDaemon(true);
+            audioThread.start();
+        }
+        
+        public void play(String soundType) {
+            int effect = indexOf(soundType);
+            if (effect != -1) {
+                // Integer.valueOf is cached for these indexes; a full queue just drops the effect
+                requests.offer(effect);
+            }
+        }
+        
+        private int indexOf(String soundType) {
+            for (int i = 0; i < EFFECTS.length; i++) {
+                if (EFFECTS[i].equals(soundType)) return i;
+            }
+            return -1;
+        }
+        
+        @Override
+        public void run() {
+            loadEffects();
+            try {
+                line = AudioSystem.getSourceDataLine(FORMAT);
+                line.open(FORMAT, outBuffer.length * 4);
+                line.start();
+            } catch (LineUnavailableException | IllegalArgumentException e) {
+                System.err.println("Sound disabled: " + e.getMessage());
+                return;
+            }
+            
+            try {
+                while (true) {
+                    // Sleep on the queue while nothing is playing
+                    if (!hasActiveVoice()) {
+                        startVoice(requests.take());
+                    }
+                    Integer next;
+                    while ((next = requests.poll()) != null) {
+                        startVoice(next);
+                    }
+                    mixChunk();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                line.close();
+            }
+        }
+        
+        // Decode every effect once into mono 16-bit PCM; missing files simply stay silent
+        private void loadEffects() {
+            for (int i = 0; i < EFFECTS.length; i++) {
+                String soundFile = "/sounds/" + EFFECTS[i] + ".wav";
+                InputStream resource = TicTacToeClient.class.getResourceAsStream(soundFile);
+                if (resource == null) continue;
+                
+                try (AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(resource));
+                     AudioInputStream pcm = AudioSystem.getAudioInputStream(FORMAT, source)) {
+                    byte[] bytes = pcm.readAllBytes();
+                    short[] decoded = new short[bytes.length / 2];
+                    for (int s = 0; s < decoded.length; s++) {
+                        decoded[s] = (short) ((bytes[2 * s] & 0xFF) | (bytes[2 * s + 1] << 8));
+                    }
+                    samples[i] = decoded;
+                } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+                    System.err.println("Error loading sound " + soundFile + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        private boolean hasActiveVoice() {
+            for (int v = 0; v < MAX_VOICES; v++) {
+                if (voiceEffect[v] != -1) return true;
+            }
+            return false;
+        }
+        
+        private void startVoice(int effect) {
+            if (samples[effect] == null) return;
+            
+            // The same effect fired again right away (e.g. several moves in one frame) is merged
+            long now = System.nanoTime();
+            if (now - lastStarted[effect] < MERGE_WINDOW_NANOS) return;
+            lastStarted[effect] = now;
+            
+            // Use a free voice, or steal the oldest one
+            int target = 0;
+            for (int v = 0; v < MAX_VOICES; v++) {
+                if (voiceEffect[v] == -1) {
+                    target = v;
+                    break;
+                }
+                if (voiceStarted[v] < voiceStarted[target]) target = v;
+            }
+            voiceEffect[target] = effect;
+            voicePosition[target] = 0;
+            voiceStarted[target] = now;
+        }
+        
+        private void mixChunk() {
+            Arrays.fill(mixBuffer, 0);
+            for (int v = 0; v < MAX_VOICES; v++) {
+                if (voiceEffect[v] == -1) continue;
+                
+                short[] data = samples[voiceEffect[v]];
+                int pos = voicePosition[v];
+                int count = Math.min(CHUNK_FRAMES, data.length - pos);
+                for (int i = 0; i < count; i++) {
+                    mixBuffer[i] += data[pos + i];
+                }
+                voicePosition[v] = pos + count;
+                if (voicePosition[v] >= data.length) {
+                    voiceEffect[v] = -1;
+                }
+            }
+            
+            float gain = soundVolume;
+            for (int i = 0; i < CHUNK_FRAMES; i++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, (int) (mixBuffer[i] * gain)));
+                outBuffer[2 * i] = (byte) sample;
+                outBuffer[2 * i + 1] = (byte) (sample >> 8);
+            }
+            line.write(outBuffer, 0, outBuffer.length);
+        }
+    }
+    
+    // Decodes on the network thread and hands the EDT at most one batch per frame
+    private class MessagePipeline {
+        private final Queue<ServerEvent> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+        private final javax.swing.Timer frameTimer;
+        
+        public MessagePipeline() {
+            frameTimer = new javax.swing.Timer(FRAME_INTERVAL_MS, e -> drain());
+            frameTimer.setRepeats(false);
+        }
+        
+        // Network thread
+        public void submit(String message) {
+            ServerEvent event;
+            try {
+                event = ServerEvent.decode(message);
+                if (event != null && event.type == ServerEvent.Type.RETRY_AFTER) {
+                    // Set before the close is noticed, so the reconnect it triggers already honours the hint
+                    connectionManager.holdOff(Long.parseLong(event.args[0]) * 1000);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Malformed server message: " + message);
+                return;
+            }
+            if (event == null) {
+                return;
+            }
+            
+            pending.add(event);
+            if (drainScheduled.compareAndSet(false, true)) {
+                frameTimer.restart();
+            }
+        }
+        
+        // EDT
+        private void drain() {
+            drainScheduled.set(false);
+            
+            List<ServerEvent> batch = new ArrayList<>();
+            ServerEvent event;
+            while ((event = pending.poll()) != null) {
+                batch.add(event);
+            }
+            
+            if (!batch.isEmpty()) {
+                applyEvents(batch);
+            }
+        }
+    }
+    
+    // Immutable, fully parsed server message
+    private static final class ServerEvent {
+        enum Type {
+            CONNECTED, RESUMED, RESUME_FAILED, SERVER_INFO, WAITING, GAME_STARTED, 
+            YOUR_TURN, BOARD, MOVE_ACK, MOVE_REJECTED, GAME_OVER, LOBBY_CHAT, GAME_CHAT, 
+            JOINED_LOBBY, ROSTER_VERSION, PLAYER_LIST, PLAYER_LIST_MORE, LOBBY_JOIN, LOBBY_LEAVE, LOBBY_RENAME, 
+            ROSTER_DELTA, ROSTER_SNAPSHOT, LEADERBOARD_PAGE, 
+            TOURNAMENT_NOTICE, RETRY_AFTER
+        }
+        
+        final Type type;
+        final String[] args;
+        final char[] cells;
+        final int[] line;
+        final PlayerInfo[] players;
+        
+        private ServerEvent(Type type, String[] args, char[] cells, int[] line, PlayerInfo[] players) {
+            this.type = type;
+            this.args = args;
+            this.cells = cells;
+            this.line = line;
+            this.players = players;
+        }
+        
+        private static ServerEvent of(Type type, String... args) {
+            return new ServerEvent(type, args, null, null, null);
+        }
+        
+        // Entries are '|'-separated; each is split on ':' into id, name, wins, losses, ties
+        private static PlayerInfo[] decodeRoster(String data) {
+            List<PlayerInfo> players = new ArrayList<>();
+            for (String entry : data.split("\\|")) {
+                String[] f = entry.split(":");
+                if (f.length < 5) continue;
+                players.add(new PlayerInfo(f[0], f[1], Integer.parseInt(f[2]), 
+                                           Integer.parseInt(f[3]), Integer.parseInt(f[4])));
+            }
+            return players.toArray(new PlayerInfo[0]);
+        }
+        
+        // Entries are rank:name:rating:wins:losses:ties
+        private static PlayerInfo[] decodeLeaderboard(String data) {
+            List<PlayerInfo> players = new ArrayList<>();
+            for (String entry : data.split("\\|")) {
+                String[] f = entry.split(":");
+                if (f.length < 6) continue;
+                PlayerInfo info = new PlayerInfo("", f[1], Integer.parseInt(f[3]), 
+                                                 Integer.parseInt(f[4]), Integer.parseInt(f[5]));
+                info.setRank(Integer.parseInt(f[0]));
+                info.setRating(Integer.parseInt(f[2]));
+                players.add(info);
+            }
+            return players.toArray(new PlayerInfo[0]);
+        }
+        
+        // Returns null for messages the client does not act on
+        static ServerEvent decode(String message) {
+            if (message.startsWith("CONNECTED:") || message.startsWith("RESUMED:")) {
+                // Format: CONNECTED:player_id:session_token or RESUMED:player_id:session_token
+                String[] parts = message.split(":");
+                return of(message.startsWith("C") ? Type.CONNECTED : Type.RESUMED, 
+                          parts[1], parts.length > 2 ? parts[2] : null);
+            } 
+            else if (message.equals("RESUME_FAILED")) {
+                return of(Type.RESUME_FAILED);
+            } 
+            else if (message.startsWith("SERVER_INFO:")) {
+                return of(Type.SERVER_INFO, message.substring(12));
+            } 
+            else if (message.equals("WAITING")) {
+                return of(Type.WAITING);
+            } 
+            else if (message.startsWith("GAME_STARTED:")) {
+                // Format: GAME_STARTED:X:game_id:opponent_name or GAME_STARTED:O:game_id:opponent_name
+                String[] parts = message.split(":", 4);
+                return of(Type.GAME_STARTED, parts[1], parts[2], parts.length > 3 ? parts[3] : "Opponent");
+            } 
+            else if (message.equals("YOUR_TURN") || message.startsWith("YOUR_TURN:")) {
+                // Format: YOUR_TURN or YOUR_TURN:your_ms_left:opponent_ms_left
+                String[] parts = message.split(":");
+                return parts.length == 3 ? of(Type.YOUR_TURN, parts[1], parts[2]) : of(Type.YOUR_TURN);
+            } 
+            else if (message.startsWith("BOARD:")) {
+                // Format: BOARD:XO OX OXO (spaces for empty cells)
+                return new ServerEvent(Type.BOARD, null, message.substring(6).toCharArray(), null, null);
+            } 
+            else if (message.startsWith("MOVE_ACK:")) {
+                // Format: MOVE_ACK:seq
+                return of(Type.MOVE_ACK, message.substring(9));
+            } 
+            else if (message.startsWith("MOVE_REJECTED:")) {
+                // Format: MOVE_REJECTED:seq:reason
+                String[] parts = message.split(":", 3);
+                return of(Type.MOVE_REJECTED, parts[1], parts.length > 2 ? parts[2] : "");
+            } 
+            else if (message.startsWith("GAME_OVER:")) {
+                // Format: GAME_OVER:X:0-4-8 or GAME_OVER:O:2-4-6 or GAME_OVER:TIE, or GAME_OVER:X:TIME on flag-fall
+                String[] parts = message.split(":");
+                if (parts.length > 2 && parts[2].equals("TIME")) {
+                    return of(Type.GAME_OVER, parts[1], "TIME");
+                }
+                int[] line = null;
+                if (parts.length > 2 && !parts[1].equals("TIE")) {
+                    String[] lineIndices = parts[2].split("-");
+                    line = new int[lineIndices.length];
+                    for (int i = 0; i < lineIndices.length; i++) {
+                        line[i] = Integer.parseInt(lineIndices[i]);
+                    }
+                }
+                return new ServerEvent(Type.GAME_OVER, new String[]{parts[1]}, null, line, null);
+            } 
+            else if (message.startsWith("LOBBY_CHAT:")) {
+                // Format: LOBBY_CHAT:sender:message
+                String[] parts = message.split(":", 3);
+                if (parts.length < 3) {
+                    return null;
+                }
+                return of(Type.LOBBY_CHAT, parts[1], parts[2]);
+            } 
+            else if (message.startsWith("GAME_CHAT:")) {
+                // Format: GAME_CHAT:sender_id:sender:message
+                String[] parts = message.split(":", 4);
+                if (parts.length < 4) {
+                    return null;
+                }
+                return of(Type.GAME_CHAT, parts[1], parts[2], parts[3]);
+            } 
+            else if (message.startsWith("JOINED_LOBBY:")) {
+                // Format: JOINED_LOBBY:lobby_id:lobby_name
+                String[] parts = message.split(":", 3);
+                return of(Type.JOINED_LOBBY, parts[1], parts.length > 2 ? parts[2] : "");
+            } 
+            else if (message.startsWith("PLAYER_LIST:")) {
+                return new ServerEvent(Type.PLAYER_LIST, null, null, null, decodeRoster(message.substring(12)));
+            } 
+            else if (message.startsWith("PLAYER_LIST_MORE:")) {
+                // Format: PLAYER_LIST_MORE:total:cursor
+                String[] parts = message.split(":", 3);
+                return of(Type.PLAYER_LIST_MORE, parts[1], parts[2]);
+            } 
+            else if (message.startsWith("LOBBY_JOIN:")) {
+                // Format: LOBBY_JOIN:player_id:version:name
+                String[] parts = message.split(":", 4);
+                PlayerInfo joined = new PlayerInfo(parts[1], parts.length > 3 ? parts[3] : "Unknown", 0, 0, 0);
+                return new ServerEvent(Type.LOBBY_JOIN, new String[]{parts[1], parts[2]}, null, null, new PlayerInfo[]{joined});
+            } 
+            else if (message.startsWith("LOBBY_LEAVE:")) {
+                // Format: LOBBY_LEAVE:player_id:version
+                String[] parts = message.split(":");
+                return of(Type.LOBBY_LEAVE, parts[1], parts[2]);
+            } 
+            else if (message.startsWith("LOBBY_RENAME:")) {
+                // Format: LOBBY_RENAME:player_id:version:name
+                String[] parts = message.split(":", 4);
+                PlayerInfo renamed = new PlayerInfo(parts[1], parts[3], 0, 0, 0);
+                return new ServerEvent(Type.LOBBY_RENAME, new String[]{parts[1], parts[2]}, null, null, new PlayerInfo[]{renamed});
+            } 
+            else if (message.startsWith("ROSTER_VERSION:")) {
+                return of(Type.ROSTER_VERSION, message.substring(15));
+            } 
+            else if (message.startsWith("ROSTER_DELTA:")) {
+                // Format: ROSTER_DELTA:since:to:changes, each +id:name| for a join, -id| for a leave, ~id:name| for a rename
+                String[] parts = message.split(":", 4);
+                StringBuilder types = new StringBuilder();
+                List<PlayerInfo> changed = new ArrayList<>();
+                for (String entry : parts[3].split("\\|")) {
+                    if (entry.isEmpty()) continue;
+                    String[] f = entry.substring(1).split(":", 2);
+                    types.append(entry.charAt(0));
+                    changed.add(new PlayerInfo(f[0], f.length > 1 ? f[1] : "", 0, 0, 0));
+                }
+                return new ServerEvent(Type.ROSTER_DELTA, new String[]{parts[1], parts[2], types.toString()}, 
+                                       null, null, changed.toArray(new PlayerInfo[0]));
+            } 
+            else if (message.startsWith("ROSTER_SNAPSHOT:")) {
+                // Format: ROSTER_SNAPSHOT:version:id:name|id:name|...
+                String[] parts = message.split(":", 3);
+                List<PlayerInfo> players = new ArrayList<>();
+                for (String entry : parts[2].split("\\|")) {
+                    String[] f = entry.split(":", 2);
+                    if (f.length < 2) continue;
+                    players.add(new PlayerInfo(f[0], f[1], 0, 0, 0));
+                }
+                return new ServerEvent(Type.ROSTER_SNAPSHOT, new String[]{parts[1]}, null, null, 
+                                       players.toArray(new PlayerInfo[0]));
+            } 
+            else if (message.startsWith("TOURNAMENT_ROUND:")) {
+                // Format: TOURNAMENT_ROUND:tournament_id:round:total_rounds
+                String[] parts = message.split(":");
+                return of(Type.TOURNAMENT_NOTICE, "Tournament round " + parts[2] + " of " + parts[3]);
+            } 
+            else if (message.startsWith("TOURNAMENT_BYE:")) {
+                return of(Type.TOURNAMENT_NOTICE, "You have a bye this round");
+            } 
+            else if (message.startsWith("TOURNAMENT_ELIMINATED:")) {
+                return of(Type.TOURNAMENT_NOTICE, "You have been knocked out of the tournament");
+            } 
+            else if (message.startsWith("TOURNAMENT_OVER:")) {
+                // Format: TOURNAMENT_OVER:tournament_id:winner_name
+                String[] parts = message.split(":", 3);
+                return of(Type.TOURNAMENT_NOTICE, "Tournament over, won by " + (parts.length > 2 ? parts[2] : "nobody"));
+            } 
+            else if (message.startsWith("RETRY_AFTER:")) {
+                // Format: RETRY_AFTER:seconds:reason, sent just before the server turns the connection away
+                String[] parts = message.split(":", 3);
+                return of(Type.RETRY_AFTER, parts[1], parts.length > 2 ? parts[2] : "Server is busy");
+            } 
+            else if (message.startsWith("LEADERBOARD_PAGE:")) {
+                // Format: LEADERBOARD_PAGE:offset:total:entries
+                String[] parts = message.split(":", 4);
+                return new ServerEvent(Type.LEADERBOARD_PAGE, new String[]{parts[1], parts[2]}, null, null, 
+                                       decodeLeaderboard(parts.length > 3 ? parts[3] : ""));
+            }
+            return null;
+        }
+    }
+    
+    // Fixed-capacity chat history shown through a JList, so only visible lines are ever laid out
+    private class ChatTranscript extends AbstractListModel<String> {
+        private final String[] lines;
+        private int start = 0;
+        private int count = 0;
+        
+        // Lines appended during the current frame, flushed together
+        private final List<String> pending = new ArrayList<>();
+        private final javax.swing.Timer flushTimer;
+        private final JList<String> view;
+        private final JScrollPane scrollPane;
+        
+        public ChatTranscript(int capacity) {
+            lines = new String[capacity];
+            flushTimer = new javax.swing.Timer(FRAME_INTERVAL_MS, e -> flush());
+            flushTimer.setRepeats(false);
+            
+            view = new JList<>(this);
+            view.setFixedCellHeight(CHAT_ROW_HEIGHT);
+            view.setPrototypeCellValue("Prototype: a typical chat line");
+            view.setFocusable(false);
+            view.setFont(themeManager.getFont(ThemeManager.FontType.REGULAR));
+            themeManager.bindBackground(view, ThemeManager.ColorRole.COMPONENT_BACKGROUND);
+            themeManager.bindForeground(view, ThemeManager.ColorRole.TEXT);
+            view.setCellRenderer(new DefaultListCellRenderer() {
+                @Override
+                public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                    JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, false, false);
+                    label.setToolTipText((String) value); // Long lines are clipped, the tooltip shows them whole
+                    return label;
+                }
+            });
+            scrollPane = new JScrollPane(view);
+        }
+        
+        public JList<String> getView() {
+            return view;
+        }
+        
+        public JScrollPane getScrollPane() {
+            return scrollPane;
+        }
+        
+        @Override
+        public int getSize() {
+            return count;
+        }
+        
+        @Override
+        public String getElementAt(int index) {
+            return lines[(start + index) % lines.length];
+        }
+        
+        public void append(String line) {
+            pending.add(line);
+            if (!flushTimer.isRunning()) {
+                flushTimer.start();
+            }
+        }
+        
+        public void clear() {
+            pending.clear();
+            flushTimer.stop();
+            int oldCount = count;
+            Arrays.fill(lines, null);
+            start = 0;
+            count = 0;
+            if (oldCount > 0) {
+                fireIntervalRemoved(this, 0, oldCount - 1);
+            }
+        }
+        
+        private void flush() {
+            if (pending.isEmpty()) return;
+            
+            // Stick to the bottom only if the reader was already there
+            JScrollBar bar = scrollPane.getVerticalScrollBar();
+            boolean stickToBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - CHAT_ROW_HEIGHT;
+            
+            int capacity = lines.length;
+            int incoming = Math.min(pending.size(), capacity);
+            int skip = pending.size() - incoming;
+            
+            // Evict the oldest lines to make room
+            int evicted = Math.max(0, count + incoming - capacity);
+            if (evicted > 0) {
+                for (int i = 0; i < evicted; i++) {
+                    lines[(start + i) % capacity] = null;
+                }
+                start = (start + evicted) % capacity;
+                count -= evicted;
+                fireIntervalRemoved(this, 0, evicted - 1);
+            }
+            
+            int first = count;
+            for (int i = 0; i < incoming; i++) {
+                lines[(start + count) % capacity] = pending.get(skip + i);
+                count++;
+            }
+            pending.clear();
+            fireIntervalAdded(this, first, count - 1);
+            
+            if (stickToBottom) {
+                view.ensureIndexIsVisible(count - 1);
+            }
+        }
+    }
+    
+    // List model that only holds a few pages of a large server-side ranking, fetching pages as rows are shown
+    private class PagedListModel extends AbstractListModel<PlayerInfo> {
+        private static final int PAGE_SIZE = 50;
+        private static final int MAX_CACHED_PAGES = 8;
+        
+        private final String verb;
+        private int size = 0;
+        private final Set<Integer> requestedPages = new HashSet<>();
+        private final Map<Integer, PlayerInfo[]> pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, PlayerInfo[]> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        
+        public PagedListModel(String verb) {
+            this.verb = verb;
+        }
+        
+        @Override
+        public int getSize() {
+            return size;
+        }
+        
+        // JList only asks for visible rows, so scrolling drives the page fetches
+        @Override
+        public PlayerInfo getElementAt(int index) {
+            int page = index / PAGE_SIZE;
+            PlayerInfo[] rows = pages.get(page);
+            if (rows == null) {
+                requestPage(page);
+                return null;
+            }
+            int offset = index % PAGE_SIZE;
+            return offset < rows.length ? rows[offset] : null;
+        }
+        
+        private void requestPage(int page) {
+            if (connection != null && requestedPages.add(page)) {
+                connection.send(verb + ":" + (page * PAGE_SIZE) + ":" + PAGE_SIZE);
+            }
+        }
+        
+        // Drop everything cached and start again from the top
+        public void refresh() {
+            pages.clear();
+            requestedPages.clear();
+            if (size > 0) {
+                fireContentsChanged(this, 0, size - 1);
+            }
+            requestPage(0);
+        }
+        
+        public void applyPage(int offset, int total, PlayerInfo[] rows) {
+            int page = offset / PAGE_SIZE;
+            requestedPages.remove(page);
+            pages.put(page, rows);
+            
+            int oldSize = size;
+            size = total;
+            if (total > oldSize) {
+                fireIntervalAdded(this, oldSize, total - 1);
+            } else if (total < oldSize) {
+                fireIntervalRemoved(this, total, oldSize - 1);
+            }
+            if (rows.length > 0 && offset < size) {
+                fireContentsChanged(this, offset, Math.min(size, offset + rows.length) - 1);
+            }
         }
     }
     
     // Game board panel with custom drawing
     private class GameBoardPanel extends JPanel {
         private final int CELL_PADDING = 15;
-        private final Color GRID_COLOR = themeManager.getGridColor();
-        private final Color BOARD_COLOR = themeManager.getBoardBackgroundColor();
-        private final Color X_COLOR = themeManager.getXColor();
-        private final Color O_COLOR = themeManager.getOColor();
-        private final Color HOVER_COLOR = themeManager.getHoverColor();
-        private final Color WIN_LINE_COLOR = themeManager.getWinLineColor();
+        
+        // Strokes and composites are immutable, so build them once
+        private final BasicStroke GRID_STROKE = new BasicStroke(6);
+        private final BasicStroke MARKER_STROKE = new BasicStroke(8, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        private final BasicStroke WIN_LINE_STROKE = new BasicStroke(10, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        private final AlphaComposite PREVIEW_COMPOSITE = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f);
+        private final AlphaComposite[] FADE_COMPOSITES = new AlphaComposite[41];
+        
+        // Cells per side; all geometry below is derived from it so hover stays O(1) for any N
+        private final int gridSize = 3;
         
         private int hoverCell = -1;
         
+        // Cached layers, rebuilt only when the size, device scale or theme changes
+        private BufferedImage gridLayer;
+        private BufferedImage xSprite;
+        private BufferedImage oSprite;
+        private int layerWidth = -1;
+        private int layerHeight = -1;
+        private double layerScale = -1;
+        private boolean layersValid = false;
+        
+        // Board as last painted, so updates only repaint cells that changed
+        private final char[] paintedBoard = new char[gridSize * gridSize];
+        private int[] paintedWinningLine = null;
+        
         public GameBoardPanel() {
-            setBackground(BOARD_COLOR);
+            setBackground(themeManager.getBoardBackgroundColor());
+            themeManager.addListener(this::invalidateLayers);
             setLayout(new GridLayout(3, 3, 6, 6));
+            Arrays.fill(paintedBoard, ' ');
+            for (int i = 0; i < FADE_COMPOSITES.length; i++) {
+                FADE_COMPOSITES[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, i / 40f);
+            }
             
             addMouseListener(new MouseAdapter() {
                 @Override
@@ -1185,24 +2128,17 @@ public class TicTacToeClient extends JFrame {
                     if (!gameActive || !myTurn) return;
                     
                     // Convert mouse click to board position
-                    int cellWidth = getWidth() / 3;
-                    int cellHeight = getHeight() / 3;
-                    
-                    int col = e.getX() / cellWidth;
-                    int row = e.getY() / cellHeight;
-                    
-                    int position = row * 3 + col;
+                    int position = cellAt(e.getX(), e.getY());
                     
                     // Make move if valid
-                    if (position >= 0 && position < 9 && board[position] == ' ') {
+                    if (position != -1 && board[position] == ' ') {
                         makeMove(position);
                     }
                 }
                 
                 @Override
                 public void mouseExited(MouseEvent e) {
-                    hoverCell = -1;
-                    repaint();
+                    setHoverCell(-1);
                 }
             });
             
@@ -1212,44 +2148,150 @@ public class TicTacToeClient extends JFrame {
                     if (!gameActive || !myTurn) return;
                     
                     // Convert mouse position to board position
-                    int cellWidth = getWidth() / 3;
-                    int cellHeight = getHeight() / 3;
-                    
-                    int col = e.getX() / cellWidth;
-                    int row = e.getY() / cellHeight;
-                    
-                    int position = row * 3 + col;
+                    int position = cellAt(e.getX(), e.getY());
                     
                     // Only show hover effect for empty cells
-                    if (position >= 0 && position < 9 && board[position] == ' ') {
-                        hoverCell = position;
-                    } else {
-                        hoverCell = -1;
-                    }
-                    
-                    repaint();
+                    setHoverCell(position != -1 && board[position] == ' ' ? position : -1);
                 }
             });
         }
         
+        // Cell under a point, or -1 outside the grid (including the leftover pixels past the last cell)
+        private int cellAt(int x, int y) {
+            int cellWidth = getWidth() / gridSize;
+            int cellHeight = getHeight() / gridSize;
+            if (cellWidth <= 0 || cellHeight <= 0 || x < 0 || y < 0) return -1;
+            
+            int col = x / cellWidth;
+            int row = y / cellHeight;
+            if (col >= gridSize || row >= gridSize) return -1;
+            
+            return row * gridSize + col;
+        }
+        
+        // Repaint the old and new hover cells, and nothing at all while the cell is unchanged
+        private void setHoverCell(int cell) {
+            int previous = hoverCell;
+            if (cell == previous) return;
+            
+            hoverCell = cell;
+            repaintCell(previous);
+            repaintCell(cell);
+        }
+        
+        private void repaintCell(int cell) {
+            if (cell < 0 || cell >= gridSize * gridSize) return;
+            int cellWidth = getWidth() / gridSize;
+            int cellHeight = getHeight() / gridSize;
+            repaint((cell % gridSize) * cellWidth, (cell / gridSize) * cellHeight, cellWidth, cellHeight);
+        }
+        
         public void updateBoard() {
+            // The win line crosses several cells, so adding or clearing it needs a full repaint
+            if (paintedWinningLine != winningLine) {
+                paintedWinningLine = winningLine;
+                System.arraycopy(board, 0, paintedBoard, 0, paintedBoard.length);
+                repaint();
+                return;
+            }
+            
+            for (int i = 0; i < paintedBoard.length; i++) {
+                if (paintedBoard[i] != board[i]) {
+                    paintedBoard[i] = board[i];
+                    repaintCell(i);
+                }
+            }
+        }
+        
+        // Used by the fade-in animation; only cells holding a marker change
+        public void repaintMarkers() {
+            for (int i = 0; i < paintedBoard.length; i++) {
+                if (board[i] != ' ') {
+                    repaintCell(i);
+                }
+            }
+        }
+        
+        // Drop cached layers so the next paint re-rasterizes them, e.g. after a theme change
+        public void invalidateLayers() {
+            layersValid = false;
+            setBackground(themeManager.getBoardBackgroundColor());
             repaint();
         }
         
         public void enableValidMoves() {
-            repaint();
+            repaintCell(hoverCell);
         }
         
         public void disableAllCells() {
-            hoverCell = -1;
-            repaint();
+            setHoverCell(-1);
         }
         
         public void setWinningLine(int[] line) {
             winningLine = line;
+            paintedWinningLine = line;
             repaint();
         }
         
+        private void ensureLayers(int width, int height, double scale) {
+            if (layersValid && width == layerWidth && height == layerHeight && scale == layerScale) {
+                return;
+            }
+            
+            int cellWidth = width / gridSize;
+            int cellHeight = height / gridSize;
+            
+            // Grid lines on a transparent layer so hover fills can sit underneath
+            gridLayer = createLayer(width, height, scale);
+            Graphics2D g2d = createLayerGraphics(gridLayer, scale);
+            g2d.setColor(themeManager.getGridColor());
+            g2d.setStroke(GRID_STROKE);
+            
+            for (int i = 1; i < gridSize; i++) {
+                // Vertical line
+                g2d.drawLine(i * cellWidth, CELL_PADDING, i * cellWidth, height - CELL_PADDING);
+                
+                // Horizontal line
+                g2d.drawLine(CELL_PADDING, i * cellHeight, width - CELL_PADDING, i * cellHeight);
+            }
+            g2d.dispose();
+            
+            // One sprite per marker at the current cell size
+            xSprite = createMarkerSprite('X', themeManager.getXColor(), cellWidth, cellHeight, scale);
+            oSprite = createMarkerSprite('O', themeManager.getOColor(), cellWidth, cellHeight, scale);
+            
+            layerWidth = width;
+            layerHeight = height;
+            layerScale = scale;
+            layersValid = true;
+        }
+        
+        // Layers are rendered at device resolution so they stay sharp on HiDPI screens
+        private BufferedImage createLayer(int width, int height, double scale) {
+            int w = Math.max(1, (int) Math.ceil(width * scale));
+            int h = Math.max(1, (int) Math.ceil(height * scale));
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (gc != null) {
+                return gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+            }
+            return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        }
+        
+        private Graphics2D createLayerGraphics(BufferedImage image, double scale) {
+            Graphics2D g2d = image.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.scale(scale, scale);
+            return g2d;
+        }
+        
+        private BufferedImage createMarkerSprite(char marker, Color color, int cellWidth, int cellHeight, double scale) {
+            BufferedImage sprite = createLayer(cellWidth, cellHeight, scale);
+            Graphics2D g2d = createLayerGraphics(sprite, scale);
+            drawMarker(g2d, cellWidth, cellHeight, marker, color);
+            g2d.dispose();
+            return sprite;
+        }
+        
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
@@ -1260,77 +2302,70 @@ public class TicTacToeClient extends JFrame {
             
             int width = getWidth();
             int height = getHeight();
-            int cellWidth = width / 3;
-            int cellHeight = height / 3;
+            int cellWidth = width / gridSize;
+            int cellHeight = height / gridSize;
+            
+            ensureLayers(width, height, g2d.getTransform().getScaleX());
+            Rectangle clip = g2d.getClipBounds();
             
             // Draw the board background
-            g2d.setColor(BOARD_COLOR);
+            g2d.setColor(getBackground());
             g2d.fillRect(0, 0, width, height);
             
             // Draw hover effect
             if (gameActive && myTurn && hoverCell != -1 && board[hoverCell] == ' ') {
-                int row = hoverCell / 3;
-                int col = hoverCell % 3;
+                int x = (hoverCell % gridSize) * cellWidth;
+                int y = (hoverCell / gridSize) * cellHeight;
                 
-                g2d.setColor(HOVER_COLOR);
-                g2d.fillRect(col * cellWidth, row * cellHeight, cellWidth, cellHeight);
+                g2d.setColor(themeManager.getHoverColor());
+                g2d.fillRect(x, y, cellWidth, cellHeight);
                 
                 // Draw preview marker (semi-transparent)
-                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
-                drawMarker(g2d, col, row, marker, marker == 'X' ? X_COLOR : O_COLOR);
-                g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
+                g2d.setComposite(PREVIEW_COMPOSITE);
+                g2d.drawImage(marker == 'X' ? xSprite : oSprite, x, y, cellWidth, cellHeight, null);
+                g2d.setComposite(AlphaComposite.SrcOver);
             }
             
             // Draw the grid lines
-            g2d.setColor(GRID_COLOR);
-            g2d.setStroke(new BasicStroke(6));
-            
-            // Vertical lines
-            g2d.drawLine(cellWidth, CELL_PADDING, cellWidth, height - CELL_PADDING);
-            g2d.drawLine(2 * cellWidth, CELL_PADDING, 2 * cellWidth, height - CELL_PADDING);
-            
-            // Horizontal lines
-            g2d.drawLine(CELL_PADDING, cellHeight, width - CELL_PADDING, cellHeight);
-            g2d.drawLine(CELL_PADDING, 2 * cellHeight, width - CELL_PADDING, 2 * cellHeight);
+            g2d.drawImage(gridLayer, 0, 0, width, height, null);
             
             // Draw the markers with fade-in effect
-            for (int i = 0; i < 9; i++) {
-                if (board[i] != ' ') {
-                    int row = i / 3;
-                    int col = i % 3;
-                    
-                    Color markerColor = board[i] == 'X' ? X_COLOR : O_COLOR;
-                    
-                    // Apply fade-in animation
-                    if (animationsEnabled) {
-                        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, fadeInProgress));
-                    }
-                    
-                    drawMarker(g2d, col, row, board[i], markerColor);
+            if (animationsEnabled) {
+                g2d.setComposite(FADE_COMPOSITES[Math.round(fadeInProgress * 40)]);
+            }
+            
+            // Only visit cells inside the clip, so a single-cell repaint costs the same on any board size
+            int firstCol = 0, lastCol = gridSize - 1, firstRow = 0, lastRow = gridSize - 1;
+            if (clip != null && cellWidth > 0 && cellHeight > 0) {
+                firstCol = Math.max(0, clip.x / cellWidth);
+                lastCol = Math.min(gridSize - 1, (clip.x + clip.width - 1) / cellWidth);
+                firstRow = Math.max(0, clip.y / cellHeight);
+                lastRow = Math.min(gridSize - 1, (clip.y + clip.height - 1) / cellHeight);
+            }
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    int i = row * gridSize + col;
+                    if (board[i] == ' ') continue;
                     
-                    // Reset composite
-                    g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
+                    g2d.drawImage(board[i] == 'X' ? xSprite : oSprite, 
+                                  col * cellWidth, row * cellHeight, cellWidth, cellHeight, null);
                 }
             }
+            g2d.setComposite(AlphaComposite.SrcOver);
             
             // Draw the winning line if applicable
             if (winningLine != null && winningLine.length > 0) {
-                g2d.setColor(WIN_LINE_COLOR);
-                g2d.setStroke(new BasicStroke(10, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+                g2d.setColor(themeManager.getWinLineColor());
+                g2d.setStroke(WIN_LINE_STROKE);
                 
                 // Calculate the center points of the winning cells
                 int startPos = winningLine[0];
-                int endPos = winningLine[2];
-                
-                int startRow = startPos / 3;
-                int startCol = startPos % 3;
-                int endRow = endPos / 3;
-                int endCol = endPos % 3;
+                int endPos = winningLine[winningLine.length - 1];
                 
-                int startX = startCol * cellWidth + cellWidth / 2;
-                int startY = startRow * cellHeight + cellHeight / 2;
-                int endX = endCol * cellWidth + cellWidth / 2;
-                int endY = endRow * cellHeight + cellHeight / 2;
+                int startX = (startPos % gridSize) * cellWidth + cellWidth / 2;
+                int startY = (startPos / gridSize) * cellHeight + cellHeight / 2;
+                int endX = (endPos % gridSize) * cellWidth + cellWidth / 2;
+                int endY = (endPos / gridSize) * cellHeight + cellHeight / 2;
                 
                 g2d.drawLine(startX, startY, endX, endY);
             }
@@ -1338,25 +2373,20 @@ public class TicTacToeClient extends JFrame {
             g2d.dispose();
         }
         
-        private void drawMarker(Graphics2D g2d, int col, int row, char marker, Color color) {
-            int cellWidth = getWidth() / 3;
-            int cellHeight = getHeight() / 3;
-            
-            int x = col * cellWidth;
-            int y = row * cellHeight;
-            
+        // Draws a marker into a cell-sized area whose origin is (0, 0)
+        private void drawMarker(Graphics2D g2d, int cellWidth, int cellHeight, char marker, Color color) {
             int padding = cellWidth / 5;  // 20% padding
             
             g2d.setColor(color);
-            g2d.setStroke(new BasicStroke(8, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g2d.setStroke(MARKER_STROKE);
             
             if (marker == 'X') {
                 // Draw X
-                g2d.drawLine(x + padding, y + padding, x + cellWidth - padding, y + cellHeight - padding);
-                g2d.drawLine(x + cellWidth - padding, y + padding, x + padding, y + cellHeight - padding);
+                g2d.drawLine(padding, padding, cellWidth - padding, cellHeight - padding);
+                g2d.drawLine(cellWidth - padding, padding, padding, cellHeight - padding);
             } else if (marker == 'O') {
                 // Draw O
-                g2d.drawOval(x + padding, y + padding, cellWidth - 2 * padding, cellHeight - 2 * padding);
+                g2d.drawOval(padding, padding, cellWidth - 2 * padding, cellHeight - 2 * padding);
             }
         }
     }
@@ -1365,21 +2395,32 @@ public class TicTacToeClient extends JFrame {
     private class ThemeManager {
         private UIMode mode;
         
-        // Colors for light mode
-        private final Color LIGHT_BACKGROUND = new Color(240, 240, 240);
-        private final Color LIGHT_COMPONENT_BG = new Color(255, 255, 255);
-        private final Color LIGHT_TEXT = new Color(50, 50, 50);
-        private final Color LIGHT_BORDER = new Color(200, 200, 200);
-        private final Color LIGHT_BOARD_BG = new Color(255, 255, 255);
-        private final Color LIGHT_GRID = new Color(180, 180, 180);
-        
-        // Colors for dark mode
-        private final Color DARK_BACKGROUND = new Color(30, 30, 30);
-        private final Color DARK_COMPONENT_BG = new Color(50, 50, 50);
-        private final Color DARK_TEXT = new Color(240, 240, 240);
-        private final Color DARK_BORDER = new Color(70, 70, 70);
-        private final Color DARK_BOARD_BG = new Color(40, 40, 40);
-        private final Color DARK_GRID = new Color(70, 70, 70);
+        // Mode-dependent color roles; each mode's palette is built once and indexed by ordinal
+        public enum ColorRole {
+            BACKGROUND, COMPONENT_BACKGROUND, TEXT, BORDER, BOARD_BACKGROUND, GRID
+        }
+        
+        // Colors for light mode, in ColorRole order
+        private final Color[] LIGHT_PALETTE = {
+            new Color(240, 240, 240), // Background
+            new Color(255, 255, 255), // Component background
+            new Color(50, 50, 50),    // Text
+            new Color(200, 200, 200), // Border
+            new Color(255, 255, 255), // Board background
+            new Color(180, 180, 180)  // Grid
+        };
+        
+        // Colors for dark mode, in ColorRole order
+        private final Color[] DARK_PALETTE = {
+            new Color(30, 30, 30),
+            new Color(50, 50, 50),
+            new Color(240, 240, 240),
+            new Color(70, 70, 70),
+            new Color(40, 40, 40),
+            new Color(70, 70, 70)
+        };
+        
+        private Color[] palette;
         
         // Accent colors (same for both modes)
         private final Color PRIMARY_COLOR = new Color(41, 128, 185); // Blue
@@ -1394,36 +2435,121 @@ public class TicTacToeClient extends JFrame {
             HEADING, HEADING_SMALL, REGULAR, REGULAR_BOLD
         }
         
+        // Fonts in FontType order, shared by every component that asks for one
+        private final Font[] FONTS = {
+            new Font("Segoe UI", Font.BOLD, 18),
+            new Font("Segoe UI", Font.BOLD, 16),
+            new Font("Segoe UI", Font.PLAIN, 14),
+            new Font("Segoe UI", Font.BOLD, 14)
+        };
+        
+        // Components that follow the palette, and listeners with cached layers to drop
+        private final List<Component> boundComponents = new ArrayList<>();
+        private final List<ColorRole> boundBackgrounds = new ArrayList<>();
+        private final List<ColorRole> boundForegrounds = new ArrayList<>();
+        private final List<Runnable> listeners = new ArrayList<>();
+        
         public ThemeManager(UIMode mode) {
             this.mode = mode;
+            this.palette = paletteFor(mode);
+        }
+        
+        private Color[] paletteFor(UIMode mode) {
+            return mode == UIMode.LIGHT ? LIGHT_PALETTE : DARK_PALETTE;
         }
         
+        // Switch palettes and push the new colors to bound components; call on the EDT
         public void setMode(UIMode mode) {
+            if (this.mode == mode) {
+                return;
+            }
             this.mode = mode;
+            this.palette = paletteFor(mode);
+            
+            // setBackground/setForeground only schedule a repaint of that component, never a relayout
+            for (int i = 0; i < boundComponents.size(); i++) {
+                Component component = boundComponents.get(i);
+                ColorRole background = boundBackgrounds.get(i);
+                ColorRole foreground = boundForegrounds.get(i);
+                if (background != null) {
+                    component.setBackground(palette[background.ordinal()]);
+                }
+                if (foreground != null) {
+                    component.setForeground(palette[foreground.ordinal()]);
+                }
+            }
+            
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+        
+        public void bindBackground(Component component, ColorRole role) {
+            component.setBackground(getColor(role));
+            bind(component, role, null);
+        }
+        
+        public void bindForeground(Component component, ColorRole role) {
+            component.setForeground(getColor(role));
+            bind(component, null, role);
+        }
+        
+        private void bind(Component component, ColorRole background, ColorRole foreground) {
+            boundComponents.add(component);
+            boundBackgrounds.add(background);
+            boundForegrounds.add(foreground);
+        }
+        
+        // Notified after every mode switch, for components that cache rendered output
+        public void addListener(Runnable listener) {
+            listeners.add(listener);
+        }
+        
+        // Line border that reads the border color at paint time, so it never needs replacing
+        public Border createLineBorder(int thickness) {
+            return new AbstractBorder() {
+                @Override
+                public void paintBorder(Component c, Graphics g, int x, int y, int width, int height) {
+                    g.setColor(getBorderColor());
+                    for (int i = 0; i < thickness; i++) {
+                        g.drawRect(x + i, y + i, width - i - i - 1, height - i - i - 1);
+                    }
+                }
+                
+                @Override
+                public Insets getBorderInsets(Component c, Insets insets) {
+                    insets.set(thickness, thickness, thickness, thickness);
+                    return insets;
+                }
+            };
+        }
+        
+        public Color getColor(ColorRole role) {
+            return palette[role.ordinal()];
         }
         
         public Color getBackgroundColor() {
-            return mode == UIMode.LIGHT ? LIGHT_BACKGROUND : DARK_BACKGROUND;
+            return palette[ColorRole.BACKGROUND.ordinal()];
         }
         
         public Color getComponentBackgroundColor() {
-            return mode == UIMode.LIGHT ? LIGHT_COMPONENT_BG : DARK_COMPONENT_BG;
+            return palette[ColorRole.COMPONENT_BACKGROUND.ordinal()];
         }
         
         public Color getTextColor() {
-            return mode == UIMode.LIGHT ? LIGHT_TEXT : DARK_TEXT;
+            return palette[ColorRole.TEXT.ordinal()];
         }
         
         public Color getBorderColor() {
-            return mode == UIMode.LIGHT ? LIGHT_BORDER : DARK_BORDER;
+            return palette[ColorRole.BORDER.ordinal()];
         }
         
         public Color getBoardBackgroundColor() {
-            return mode == UIMode.LIGHT ? LIGHT_BOARD_BG : DARK_BOARD_BG;
+            return palette[ColorRole.BOARD_BACKGROUND.ordinal()];
         }
         
         public Color getGridColor() {
-            return mode == UIMode.LIGHT ? LIGHT_GRID : DARK_GRID;
+            return palette[ColorRole.GRID.ordinal()];
         }
         
         public Color getPrimaryColor() {
@@ -1459,18 +2585,7 @@ public class TicTacToeClient extends JFrame {
         }
         
         public Font getFont(FontType type) {
-            switch (type) {
-                case HEADING:
-                    return new Font("Segoe UI", Font.BOLD, 18);
-                case HEADING_SMALL:
-                    return new Font("Segoe UI", Font.BOLD, 16);
-                case REGULAR:
-                    return new Font("Segoe UI", Font.PLAIN, 14);
-                case REGULAR_BOLD:
-                    return new Font("Segoe UI", Font.BOLD, 14);
-                default:
-                    return new Font("Segoe UI", Font.PLAIN, 14);
-            }
+            return FONTS[type.ordinal()];
         }
     }
     
@@ -1480,6 +2595,8 @@ public class TicTacToeClient extends JFrame {
         private Color endColor = new Color(52, 152, 219); // Lighter blue
         private Color textColor = Color.WHITE;
         private Color disabledColor = new Color(200, 200, 200);
+        private final Color ROLLOVER_COLOR = new Color(255, 255, 255, 50);
+        private final BasicStroke ROLLOVER_STROKE = new BasicStroke(3);
         
         public GradientButton(String text) {
             super(text);
@@ -1515,8 +2632,8 @@ public class TicTacToeClient extends JFrame {
             
             // Draw highlighted border when mouse over
             if (getModel().isRollover() && isEnabled()) {
-                g2d.setColor(new Color(255, 255, 255, 50));
-                g2d.setStroke(new BasicStroke(3));
+                g2d.setColor(ROLLOVER_COLOR);
+                g2d.setStroke(ROLLOVER_STROKE);
                 g2d.drawRoundRect(1, 1, width - 3, height - 3, 10, 10);
             }
             
@@ -1545,7 +2662,7 @@ public class TicTacToeClient extends JFrame {
             this.selected = initialState;
             
             setText(selected ? onText : offText);
-            setFont(new Font("Segoe UI", Font.BOLD, 16));
+            setFont(themeManager.getFont(ThemeManager.FontType.HEADING_SMALL));
             setFocusPainted(false);
             setBorderPainted(false);
             setContentAreaFilled(false);
@@ -1569,9 +2686,16 @@ public class TicTacToeClient extends JFrame {
     
     private class StatusIndicator extends JComponent {
         public enum Status {
-            CONNECTED, DISCONNECTED, RECONNECTING
+            CONNECTED, CONNECTING, DISCONNECTED, RECONNECTING
         }
         
+        private final Color CONNECTED_COLOR = new Color(39, 174, 96); // Green
+        private final Color DISCONNECTED_COLOR = new Color(231, 76, 60); // Red
+        private final Color OUTLINE_COLOR = new Color(0, 0, 0, 30);
+        private final BasicStroke OUTLINE_STROKE = new BasicStroke(1);
+        // Orange at each pulse step (alpha moves in 0.05 increments)
+        private final Color[] PULSE_COLORS = new Color[21];
+        
         private Status status;
         private javax.swing.Timer pulseTimer;
         private float pulseAlpha = 0.0f;
@@ -1580,6 +2704,9 @@ public class TicTacToeClient extends JFrame {
         public StatusIndicator(Status initialStatus) {
             this.status = initialStatus;
             setPreferredSize(new Dimension(24, 24));
+            for (int i = 0; i < PULSE_COLORS.length; i++) {
+                PULSE_COLORS[i] = new Color(230, 126, 34, i * 255 / 20);
+            }
             
             // Start pulse animation for reconnecting status
             pulseTimer = new javax.swing.Timer(50, e -> {
@@ -1604,7 +2731,7 @@ public class TicTacToeClient extends JFrame {
             this.status = status;
             
             // Start/stop pulse animation
-            if (status == Status.RECONNECTING) {
+            if (status == Status.RECONNECTING || status == Status.CONNECTING) {
                 if (!pulseTimer.isRunning()) {
                     pulseTimer.start();
                 }
@@ -1629,22 +2756,23 @@ public class TicTacToeClient extends JFrame {
             // Draw status indicator
             switch (status) {
                 case CONNECTED:
-                    g2d.setColor(new Color(39, 174, 96)); // Green
+                    g2d.setColor(CONNECTED_COLOR);
                     break;
                 case DISCONNECTED:
-                    g2d.setColor(new Color(231, 76, 60)); // Red
+                    g2d.setColor(DISCONNECTED_COLOR);
                     break;
+                case CONNECTING:
                 case RECONNECTING:
-                    // Use pulse effect for reconnecting
-                    g2d.setColor(new Color(230, 126, 34, (int)(pulseAlpha * 255))); // Orange with pulse
+                    // Use pulse effect while a connection is being attempted
+                    g2d.setColor(PULSE_COLORS[Math.round(pulseAlpha * 20)]);
                     break;
             }
             
             g2d.fillOval(x, y, size, size);
             
             // Draw border
-            g2d.setColor(new Color(0, 0, 0, 30));
-            g2d.setStroke(new BasicStroke(1));
+            g2d.setColor(OUTLINE_COLOR);
+            g2d.setStroke(OUTLINE_STROKE);
             g2d.drawOval(x, y, size, size);
             
             g2d.dispose();
@@ -1652,7 +2780,7 @@ public class TicTacToeClient extends JFrame {
     }
     
     // Data classes
-    private class PlayerInfo {
+    private static class PlayerInfo {
         private String id;
         private String name;
         private int wins;
@@ -1728,7 +2856,9 @@ public class TicTacToeClient extends JFrame {
         public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
             JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
             
-            if (value instanceof PlayerInfo) {
+            if (value == null) {
+                label.setText("Loading...");
+            } else if (value instanceof PlayerInfo) {
                 PlayerInfo player = (PlayerInfo) value;
                 label.setText(player.getName());
                 
@@ -1745,6 +2875,31 @@ public class TicTacToeClient extends JFrame {
         }
     }
     
+    private class LeaderboardCellRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            JLabel label = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            
+            if (value instanceof PlayerInfo) {
+                PlayerInfo player = (PlayerInfo) value;
+                label.setText("#" + player.getRank() + "   " + player.getName() + "   " + player.getRating() + 
+                              "   W/L/T: " + player.getWins() + "/" + player.getLosses() + "/" + player.getTies());
+            } else {
+                label.setText("#" + (index + 1) + "   Loading...");
+            }
+            
+            if (isSelected) {
+                label.setBackground(themeManager.getPrimaryColor());
+                label.setForeground(Color.WHITE);
+            } else {
+                label.setBackground(themeManager.getComponentBackgroundColor());
+                label.setForeground(themeManager.getTextColor());
+            }
+            
+            return label;
+        }
+    }
+    
     private class GameHistoryItem {
         private String gameId;
         private String opponent;
@@ -1769,6 +2924,15 @@ public class TicTacToeClient extends JFrame {
         }
     }
     
+    // Window for one local player, talking to a server in this JVM without any sockets
+    public static TicTacToeClient openLocal() {
+        TicTacToeClient client = new TicTacToeClient(TicTacToeServer::connectLocal);
+        // Several local windows share the JVM, so closing one must not end the others
+        client.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        client.connectToServer();
+        return client;
+    }
+    
     public static void main(String[] args) {
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -0,0 +1,262 @@
+package TicTacToee;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.*;
+
+// Edge process: owns client sockets, checks framing, and multiplexes client sessions over a few
+// persistent links to backend servers. A backend restart or link drop does not close client sockets;
+// affected sessions are re-opened on a fresh link and resumed with the client's session token.
+// The gateway authenticates itself to backends with the gateway secret; clients are not authenticated
+// here, their identity is still the backend's session token, which passes through unchanged.
+public class TicTacToeGateway {
+    static final int DEFAULT_PORT = 5567;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final long RELINK_DELAY_MS = 1000;
+    private static final int RETRY_AFTER_SECONDS = 5;
+    private static final Logger logger = Logger.getLogger("TicTacToeGateway");
+    private static final String USAGE =
+        "Usage: TicTacToeGateway --backends=<host:gateway_port>,... [--bind=<address>] [--port=<n>]\n" +
+        "                        [--links=<links per backend>] [--secret=<gateway secret>]\n" +
+        "                        [--max-clients=<n>]";
+
+    private static final AtomicInteger nextSessionId = new AtomicInteger(0);
+    private static final AtomicInteger currentClients = new AtomicInteger(0);
+    private static Backend[] backends;
+    private static String secret = "";
+
+    public static void main(String[] args) {
+        String bind = "0.0.0.0";
+        int port = DEFAULT_PORT;
+        int links = 2;
+        int maxClients = 10000; // Client sockets are cheap here; game load is the backends' concern
+        String backendList = "";
+
+        try {
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+                String key = arg.substring(2, eq);
+                String value = arg.substring(eq + 1);
+                switch (key) {
+                    case "bind": bind = value; break;
+                    case "port": port = Integer.parseInt(value); break;
+                    case "links": links = Math.max(1, Integer.parseInt(value)); break;
+                    case "backends": backendList = value; break;
+                    case "secret": secret = value; break;
+                    case "max-clients": maxClients = Math.max(1, Integer.parseInt(value)); break;
+                    default: throw new IllegalArgumentException("Unknown setting " + key);
+                }
+            }
+            if (backendList.isEmpty()) {
+                throw new IllegalArgumentException("No backends given");
+            }
+            String[] addresses = backendList.split(",");
+            backends = new Backend[addresses.length];
+            for (int i = 0; i < addresses.length; i++) {
+                backends[i] = new Backend(addresses[i].trim(), links);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid gateway configuration: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        logger.info("Tic Tac Toe Gateway starting on " + bind + ":" + port + " for " + backends.length + " backend(s)");
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(bind))) {
+            while (true) {
+                try {
+                    Transport client = new Transport.SocketTransport(serverSocket.accept());
+
+                    // The slot is released when the session ends
+                    if (currentClients.incrementAndGet() > maxClients) {
+                        currentClients.decrementAndGet();
+                        client.send("RETRY_AFTER:" + RETRY_AFTER_SECONDS + ":Gateway is full");
+                        client.close();
+                        continue;
+                    }
+                    int sessionId = nextSessionId.incrementAndGet();
+
+                    // Sessions are spread over backends and stay on theirs for life
+                    Backend backend = backends[Math.floorMod(sessionId, backends.length)];
+                    ClientSession session = new ClientSession(sessionId, client, backend);
+                    Thread clientThread = new Thread(session, "client-" + sessionId);
+                    clientThread.setDaemon(true);
+                    clientThread.start();
+                } catch (IOException e) {
+                    logger.severe("Error accepting client connection: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Error starting gateway: " + e.getMessage());
+        }
+    }
+
+    // A backend server and the pool of links to it; sessions pick a link by id
+    private static class Backend {
+        private final String host;
+        private final int port;
+        private final Transport.MuxLink[] links;
+
+        public Backend(String address, int linkCount) {
+            String[] parts = address.split(":");
+            if (parts.length != 2 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("Backend address must be host:port, got " + address);
+            }
+            this.host = parts[0];
+            this.port = Integer.parseInt(parts[1]);
+            this.links = new Transport.MuxLink[linkCount];
+        }
+
+        // Open a session on a live link, connecting the link first if needed
+        public Transport open(int sessionId) throws IOException {
+            return link(Math.floorMod(sessionId, links.length)).open(sessionId);
+        }
+
+        private synchronized Transport.MuxLink link(int slot) throws IOException {
+            Transport.MuxLink link = links[slot];
+            if (link != null && !link.isClosed()) {
+                return link;
+            }
+
+            Transport connection = Transport.connect(host, port, CONNECT_TIMEOUT_MS);
+            connection.send("HELLO " + secret);
+            link = new Transport.MuxLink(connection, null);
+            Thread linkThread = new Thread(link, "link-" + host + ":" + port + "#" + slot);
+            linkThread.setDaemon(true);
+            linkThread.start();
+            links[slot] = link;
+            logger.info("Linked to backend " + host + ":" + port + " (slot " + slot + ")");
+            return link;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    // One client connection: this thread forwards client lines upstream, a pump thread forwards replies back
+    private static class ClientSession implements Runnable {
+        private final int id;
+        private final Transport client;
+        private final Backend backend;
+        private volatile Transport upstream;
+        private volatile boolean clientClosed = false;
+
+        // Replayed when the session has to be re-opened on a new link
+        private volatile String sessionToken;
+        private volatile String nameCommand;
+        private String connectedToken; // Identity the current link was given, adopted if its RESUME fails
+
+        public ClientSession(int id, Transport client, Backend backend) {
+            this.id = id;
+            this.client = client;
+            this.backend = backend;
+        }
+
+        @Override
+        public void run() {
+            try {
+                upstream = backend.open(id);
+            } catch (IOException e) {
+                client.send("ERROR:Server unavailable. Please try again later.");
+                client.close();
+                currentClients.decrementAndGet();
+                return;
+            }
+
+            Thread pump = new Thread(this::pumpDownstream, "pump-" + id);
+            pump.setDaemon(true);
+            pump.start();
+
+            try {
+                String line;
+                while ((line = client.receive()) != null) {
+                    // Framing: oversized lines never reach the backend
+                    if (line.length() > MAX_LINE_LENGTH) {
+                        client.send("ERROR:Message too long");
+                        continue;
+                    }
+                    if (line.startsWith("NAME:")) {
+                        nameCommand = line;
+                    }
+                    upstream.send(line);
+                }
+            } catch (IOException e) {
+                // Client went away; the backend holds the player's session for a resume
+            } finally {
+                clientClosed = true;
+                upstream.close();
+                client.close();
+                currentClients.decrementAndGet();
+            }
+        }
+
+        private void pumpDownstream() {
+            while (!clientClosed) {
+                Transport current = upstream;
+                try {
+                    String line;
+                    while ((line = current.receive()) != null) {
+                        if (line.startsWith("CONNECTED:") || line.startsWith("RESUMED:")) {
+                            // CONNECTED:<player_id>:<token> or RESUMED:<player_id>:<token>
+                            String[] parts = line.split(":");
+                            if (parts.length > 2) {
+                                if (sessionToken == null || line.startsWith("RESUMED:")) {
+                                    sessionToken = parts[2];
+                                }
+                                connectedToken = parts[2];
+                            }
+                        } else if (line.equals("RESUME_FAILED") && connectedToken != null) {
+                            // The old session is gone; the fresh identity from CONNECTED is the one to resume next time
+                            sessionToken = connectedToken;
+                        }
+                        client.send(line);
+                    }
+                } catch (IOException e) {
+                    // Treated like a closed session below
+                }
+
+                boolean linkLost = current instanceof Transport.MuxLink.MuxSession
+                                   && ((Transport.MuxLink.MuxSession) current).isLinkLost();
+                if (clientClosed || !linkLost) {
+                    // The backend ended this session itself, so the client connection ends too
+                    client.close();
+                    return;
+                }
+                relink();
+            }
+        }
+
+        // Keep the client connected while the backend link comes back, then pick up where it left off
+        private void relink() {
+            logger.info("Session " + id + " lost its link to " + backend + ", re-opening");
+            while (!clientClosed) {
+                try {
+                    Transport fresh = backend.open(id);
+                    if (sessionToken != null) {
+                        fresh.send("RESUME:" + sessionToken);
+                    }
+                    if (nameCommand != null) {
+                        fresh.send(nameCommand);
+                    }
+                    upstream = fresh;
+                    return;
+                } catch (IOException e) {
+                    try {
+                        Thread.sleep(RELINK_DELAY_MS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -9,7 +9,7 @@ public class TicTacToeMain extends JFrame {
     
     public TicTacToeMain() {
         setTitle("Tic Tac Toe Launcher");
-        setSize(450, 300);
+        setSize(450, 360);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         
@@ -21,7 +21,7 @@ public class TicTacToeMain extends JFrame {
         headerLabel.setFont(new Font("Segoe UI", Font.BOLD, 24));
         
         // Buttons panel
-        JPanel buttonsPanel = new JPanel(new GridLayout(3, 1, 0, 10));
+        JPanel buttonsPanel = new JPanel(new GridLayout(4, 1, 0, 10));
         
         JButton startServerButton = createStyledButton("Start Server");
         startServerButton.addActionListener(e -> startServer());
@@ -29,11 +29,15 @@ public class TicTacToeMain extends JFrame {
         JButton startClientButton = createStyledButton("Start Client");
         startClientButton.addActionListener(e -> startClient());
         
+        JButton localGameButton = createStyledButton("Local Game");
+        localGameButton.addActionListener(e -> startLocalGame());
+        
         JButton exitButton = createStyledButton("Exit");
         exitButton.addActionListener(e -> System.exit(0));
         
         buttonsPanel.add(startServerButton);
         buttonsPanel.add(startClientButton);
+        buttonsPanel.add(localGameButton);
         buttonsPanel.add(exitButton);
         
         // Footer
@@ -79,7 +83,7 @@ public class TicTacToeMain extends JFrame {
         new Thread(() -> {
             try {
                 JOptionPane.showMessageDialog(this, 
-                    "Server starting on port 5000.\nWaiting for player connections...",
+                    "Server starting on port " + TicTacToeServer.DEFAULT_PORT + ".\nWaiting for player connections...",
                     "Server Starting", JOptionPane.INFORMATION_MESSAGE);
                 
                 TicTacToeServer.main(new String[]{});
@@ -95,6 +99,21 @@ public class TicTacToeMain extends JFrame {
         SwingUtilities.invokeLater(TicTacToeClient::new);
     }
     
+    // Server and clients in this JVM over the in-memory transport, for hot-seat play
+    private void startLocalGame() {
+        Object choice = JOptionPane.showInputDialog(this, 
+            "Number of local players:", 
+            "Local Game", JOptionPane.QUESTION_MESSAGE, null, 
+            new Integer[]{2, 3, 4}, 2);
+        if (choice == null) {
+            return;
+        }
+        
+        for (int i = 0; i < (Integer) choice; i++) {
+            TicTacToeClient.openLocal();
+        }
+    }
+    
     public static void main(String[] args) {
         try {
             // Set system look and feel
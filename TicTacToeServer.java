@@ -1,7 +1,17 @@
 package TicTacToee;
 
 import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
@@ -9,69 +19,136 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
 import java.util.logging.*;
 
 public class TicTacToeServer {
-    // Server configuration
-    private static final int PORT = 5567;
-    private static final int MAX_CLIENTS = 100;
+    // Server configuration; defaults below can be overridden by server.properties and command line flags
+    static final int DEFAULT_PORT = 5567;
+    private static final int PLAYER_LIST_PAGE_SIZE = 50;
+    private static final int ROSTER_HISTORY_SIZE = 256;
+    private static final int CHAT_FLUSH_INTERVAL_MS = 50;
+    private static final int DEGRADED_CHAT_FLUSH_EVERY = 4; // Flush intervals per flush while chat is degraded
+    private static final int CHAT_BACKLOG_SIZE = 50;
+    private static final int CHAT_BURST = 5;
+    private static final double CHAT_MESSAGES_PER_SECOND = 1.0;
+    private static final int RESUME_GRACE_SECONDS = 30;
+    private static final int RESUME_BUFFER_SIZE = 64;
+    private static final int LEADERBOARD_MAX_PAGE = 100;
+    private static final long RANKING_REFRESH_MS = 1000;
+    private static final long CLOCK_TICK_MS = 10;
+    private static final long DRAIN_POLL_MS = 200;
+    private static final String HANDOFF_HEADER = "TTT-HANDOFF 1";
+    private static final long HANDOFF_SLACK_MS = 30_000; // Beyond the drain timeout, for the old process to write the file
     private static final Logger logger = Logger.getLogger("TicTacToeServer");
     
     // Data structures for game management
-    private static final Map<String, GameLobby> lobbies = new ConcurrentHashMap<>();
-    private static final Map<String, Player> activePlayers = new ConcurrentHashMap<>();
-    private static final Map<String, Game> activeGames = new ConcurrentHashMap<>();
-    private static final Map<String, List<String>> playerGameHistory = new ConcurrentHashMap<>();
-    private static final Set<String> waitingPlayers = ConcurrentHashMap.newKeySet();
+    private static final Map<Long, GameLobby> lobbies = new ConcurrentHashMap<>();
+    private static final PlayerRegistry activePlayers = new PlayerRegistry(); // Players homed on this node
+    private static final Map<Long, Game> activeGames = new ConcurrentHashMap<>();
+    private static final Map<Long, List<String>> playerGameHistory = new ConcurrentHashMap<>();
+    private static final Set<Long> waitingPlayers = ConcurrentHashMap.newKeySet(); // Local players in matchmaking
+    private static final Map<String, String> sessionTokens = new ConcurrentHashMap<>(); // token -> player id
+    private static final SecureRandom tokenRandom = new SecureRandom();
+    
+    // Ranked players, re-sorted at most once per RANKING_REFRESH_MS for leaderboard range queries
+    private static volatile List<Player> ranking = Collections.emptyList();
+    private static long rankingBuiltAt = 0;
+    private static int chatFlushSkips = 0; // Scheduler thread only
+    private static final Object lobbyLock = new Object();
+    private static GameLobby defaultLobby;
+    private static ServerConfig config = new ServerConfig();
+    private static ScheduledExecutorService scheduler; // Sized by config.workers in startServices
+    private static IdAllocator ids = new IdAllocator(0, 0); // Player, game and lobby ids; keyed by node in startServices
+    private static TimerWheel clockWheel; // Flag-fall for every game's clock
+    private static final AdmissionController admission = new AdmissionController();
+    private static volatile CommandJournal journal; // Recording of inbound commands; null unless journal.file is set
+    private static volatile JournalReplay replay; // Set while a journal is being replayed
+    
+    // Graceful restart: while draining no new players or games are taken; once handed off, whatever is
+    // still running belongs to the process that imports the handoff file
+    private static volatile boolean draining = false;
+    private static volatile boolean handedOff = false;
+    private static volatile boolean drainOnShutdown = false; // The drain hook is installed and closes the journal last
+    private static volatile ServerSocket clientListener;
+    private static volatile ServerSocket gatewayListener;
+    private static final Object handoffLock = new Object(); // Serialises handoff imports
+    private static volatile long handoffExpectedUntil = 0; // A late handoff file is only looked for before this
+    
+    // Cluster mode: null on a single node. Games live on the node owning the game-id hash, and each
+    // rating band's matchmaking pool on the node owning the band; remote participants are RemotePlayer stubs
+    private static ClusterBus cluster;
+    private static HashRing ring;
+    private static final Map<Long, RemotePlayer> remotePlayers = new ConcurrentHashMap<>();
+    private static final Map<Long, Tournament> tournaments = new ConcurrentHashMap<>();
+    private static final Map<Integer, Deque<MatchTicket>> matchPools = new HashMap<>(); // Guarded by itself
     
     // Statistics
     private static AtomicInteger totalGamesPlayed = new AtomicInteger(0);
     private static AtomicInteger currentConnections = new AtomicInteger(0);
+    private static final AtomicInteger nextConnectionId = new AtomicInteger(0);
     private static Timestamp serverStartTime = new Timestamp(System.currentTimeMillis());
 
     public static void main(String[] args) {
-        setupLogger();
-        logger.info("Tic Tac Toe Server starting on port " + PORT);
+        try {
+            config = ServerConfig.load(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Invalid server configuration: " + e.getMessage());
+            System.err.println(ServerConfig.USAGE);
+            System.exit(1);
+        }
         
-        // Create default lobby
-        GameLobby defaultLobby = new GameLobby("Main Lobby", "The main lobby for all players");
-        lobbies.put(defaultLobby.getId(), defaultLobby);
+        if (!config.replayFile.isEmpty()) {
+            boolean withinBudget = false;
+            try {
+                withinBudget = JournalReplay.run(config.replayFile);
+            } catch (IOException e) {
+                System.err.println("Error replaying journal: " + e.getMessage());
+            }
+            System.exit(withinBudget ? 0 : 1);
+        }
         
-        // Schedule periodic tasks
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(TicTacToeServer::printServerStats, 5, 60, TimeUnit.SECONDS);
+        startServices();
         
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
+        // Training run for an AppCDS archive: classes are loaded and JIT-warm, so exit and let the JVM dump them
+        if (config.warmupOnly) {
+            logger.info("Warm-up finished, exiting");
+            System.exit(0);
+        }
+        
+        logger.info("Tic Tac Toe Server starting on " + config.bindAddress + ":" + config.port);
+        
+        try (ServerSocket serverSocket = openListener(config.port)) {
+            clientListener = serverSocket;
+            installDrainHandler();
             logger.info("Server started successfully. Waiting for connections...");
             
-            while (true) {
+            while (!draining) {
                 try {
                     // Accept new client connection
                     Socket clientSocket = serverSocket.accept();
-                    currentConnections.incrementAndGet();
                     
-                    // Log connection
-                    String clientAddress = clientSocket.getInetAddress().getHostAddress();
-                    logger.info("New connection from: " + clientAddress);
-                    
-                    // Check if server is full
-                    if (currentConnections.get() > MAX_CLIENTS) {
-                        logger.warning("Server is full. Rejecting connection from: " + clientAddress);
-                        PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-                        out.println("ERROR:Server is full. Please try again later.");
-                        clientSocket.close();
-                        currentConnections.decrementAndGet();
+                    // Turned away connections are answered off this thread, so accepting never waits on them
+                    String refusal = admission.admit();
+                    if (refusal != null) {
+                        admission.refuse(clientSocket, refusal);
                         continue;
                     }
                     
+                    // Log connection
+                    logger.info("New connection from: " + clientSocket.getInetAddress().getHostAddress());
+                    
                     // Create and start a new thread to handle this client
-                    ClientHandler clientHandler = new ClientHandler(clientSocket);
-                    Thread clientThread = new Thread(clientHandler);
-                    clientThread.setDaemon(true);
-                    clientThread.start();
+                    startHandler(new Transport.SocketTransport(clientSocket));
                     
                 } catch (IOException e) {
-                    logger.severe("Error accepting client connection: " + e.getMessage());
+                    if (!draining) {
+                        logger.severe("Error accepting client connection: " + e.getMessage());
+                    }
                 }
             }
         } catch (IOException e) {
@@ -79,10 +156,508 @@ public class TicTacToeServer {
         }
     }
     
+    // With SO_REUSEPORT the next process can bind the same port while this one is still draining,
+    // so a restart never leaves the port closed
+    private static ServerSocket openListener(int port) throws IOException {
+        ServerSocket listener = new ServerSocket();
+        try {
+            if (listener.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                listener.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            listener.bind(new InetSocketAddress(InetAddress.getByName(config.bindAddress), port), config.backlog);
+            return listener;
+        } catch (IOException e) {
+            listener.close();
+            throw e;
+        }
+    }
+    
+    // Lobby and periodic tasks shared by socket and in-process clients; safe to call more than once
+    private static synchronized void startServices() {
+        if (defaultLobby != null) {
+            return;
+        }
+        
+        // Warm up on its own thread while the logger and lobby are being set up
+        Thread warmup = new Thread(() -> warmUp(config.warmupGames), "warmup");
+        if (config.warmupGames > 0) {
+            warmup.start();
+        }
+        
+        setupLogger();
+        scheduler = Executors.newScheduledThreadPool(config.workers);
+        clockWheel = new TimerWheel(CLOCK_TICK_MS, scheduler);
+        clockWheel.start();
+        
+        ids = new IdAllocator(config.clusterNode, nextGeneration());
+        
+        // Open the journal before the first id is issued so a replay can map every one of them
+        if (!config.journalFile.isEmpty()) {
+            try {
+                CommandJournal opened = new CommandJournal(config.journalFile);
+                journal = opened;
+                scheduler.scheduleAtFixedRate(opened::flush, 1, 1, TimeUnit.SECONDS);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    if (!drainOnShutdown) {
+                        opened.close();
+                    }
+                }, "journal-close"));
+                logger.info("Recording inbound commands to " + config.journalFile);
+            } catch (IOException e) {
+                logger.severe("Error opening command journal: " + e.getMessage());
+            }
+        }
+        
+        // Create default lobby
+        defaultLobby = new GameLobby("Main Lobby", "The main lobby for all players", false, null);
+        lobbies.put(defaultLobby.getKey(), defaultLobby);
+        
+        if (!config.clusterNodes.isEmpty()) {
+            cluster = new ClusterBus(config.clusterNode, config.clusterNodes.split(","));
+            ring = new HashRing(cluster.size());
+            try {
+                cluster.start();
+            } catch (IOException e) {
+                logger.severe("Error starting cluster bus: " + e.getMessage());
+            }
+        }
+        
+        if (config.gatewayPort > 0) {
+            try {
+                startGatewayListener();
+            } catch (IOException e) {
+                logger.severe("Error starting gateway listener: " + e.getMessage());
+            }
+        }
+        
+        // Schedule periodic tasks
+        scheduler.scheduleAtFixedRate(TicTacToeServer::printServerStats, 5, config.statsIntervalSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(TicTacToeServer::pruneEmptyLobbies, 60, 60, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(TicTacToeServer::flushLobbyChat, 
+                                      CHAT_FLUSH_INTERVAL_MS, CHAT_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // A replay runs flat out on purpose, and shedding would change what it replays
+        if (replay == null) {
+            admission.start();
+        }
+        
+        // Pick up games a previous process handed over before it exited, or will hand over once its drain ends
+        if (!config.handoffFile.isEmpty()) {
+            handoffExpectedUntil = System.currentTimeMillis() + config.drainTimeoutSeconds * 1000L + HANDOFF_SLACK_MS;
+        }
+        importHandoff();
+        
+        if (config.warmupGames > 0) {
+            long started = System.nanoTime();
+            try {
+                warmup.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Warm-up of " + config.warmupGames + " games done in " + 
+                        (System.nanoTime() - started) / 1_000_000 + "ms after setup");
+        }
+    }
+    
+    // Play synthetic games through Game.makeMove so the move path is compiled before real players arrive.
+    // The players are never registered, so no messages are sent and no statistics change.
+    private static void warmUp(int games) {
+        Random random = new Random(42);
+        int[] order = new int[9];
+        for (int g = 0; g < games; g++) {
+            Game game = new Game("warmup-" + g, "warmup-x", "warmup-o");
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            
+            // Alternate players; illegal and out-of-turn moves are included on purpose to warm the reject path too
+            for (int i = 0; i < order.length && !game.isGameOver(); i++) {
+                game.makeMove(i % 2 == 0 ? "warmup-x" : "warmup-o", order[i], (i & 3) == 0 ? -1 : 0);
+                game.makeMove(i % 2 == 0 ? "warmup-x" : "warmup-o", order[i], -1);
+            }
+        }
+    }
+    
+    // Node that owns a game id or matchmaking band; always this node outside cluster mode
+    private static int ownerOf(long key) {
+        return cluster == null ? 0 : ring.owner(key);
+    }
+    
+    private static boolean ownsLocally(long key) {
+        return cluster == null || ownerOf(key) == cluster.self();
+    }
+    
+    // True while the player's current game is unfinished. A game hosted on another node counts as live
+    // until its node clears the id through GAME_ID.
+    private static boolean inLiveGame(Player player) {
+        String gameId = player.getCurrentGameId();
+        if (gameId == null) {
+            return false;
+        }
+        Game game = gameFor(gameId);
+        return game != null ? !game.isGameOver() : !ownsLocally(IdAllocator.parse(gameId));
+    }
+    
+    // Game hosted on this node by wire id; null for unknown or malformed ids
+    private static Game gameFor(String gameId) {
+        return activeGames.get(IdAllocator.parse(gameId));
+    }
+    
+    private static GameLobby lobbyFor(String lobbyId) {
+        return lobbies.get(IdAllocator.parse(lobbyId));
+    }
+    
+    // Local player, or the stub for a remote player in a game hosted here
+    private static Player findPlayer(String playerId) {
+        Player player = activePlayers.get(playerId);
+        return player != null ? player : remotePlayers.get(IdAllocator.parse(playerId));
+    }
+    
+    private static int ratingBand(int rating) {
+        return Math.floorDiv(rating, config.ratingBand);
+    }
+    
+    // Queue a local player in their rating band's pool, wherever in the cluster that pool lives
+    private static void requestMatch(Player player) {
+        waitingPlayers.add(player.getKey());
+        int band = ratingBand(player.getRating());
+        MatchTicket ticket = new MatchTicket(band, cluster == null ? 0 : cluster.self(), 
+                                             player.getRating(), player.getId(), player.getName());
+        if (ownsLocally(band)) {
+            enqueueMatch(ticket);
+        } else {
+            cluster.send(ownerOf(band), "MATCH:" + ticket.encode());
+        }
+    }
+    
+    // Returns false if the player was not waiting
+    private static boolean cancelMatch(Player player) {
+        if (!waitingPlayers.remove(player.getKey())) {
+            return false;
+        }
+        int band = ratingBand(player.getRating());
+        if (ownsLocally(band)) {
+            removeMatch(band, player.getId());
+        } else {
+            cluster.send(ownerOf(band), "MATCH_CANCEL:" + band + ":" + player.getId());
+        }
+        return true;
+    }
+    
+    // Runs on the node owning the ticket's band: pair it with the oldest live ticket or leave it queued.
+    // While matchmaking is paused for load every ticket is queued, and resumeMatchmaking pairs them later.
+    private static void enqueueMatch(MatchTicket ticket) {
+        MatchTicket opponent;
+        synchronized (matchPools) {
+            Deque<MatchTicket> pool = matchPools.computeIfAbsent(ticket.band, b -> new ArrayDeque<>());
+            if (admission.isMatchmakingPaused()) {
+                pool.addLast(ticket);
+                return;
+            }
+            do {
+                opponent = pool.pollFirst();
+            } while (opponent != null && (opponent.playerId.equals(ticket.playerId) || !opponent.isLive()));
+            
+            if (opponent == null) {
+                pool.addLast(ticket);
+                return;
+            }
+        }
+        
+        Player player1 = opponent.resolve();
+        Player player2 = ticket.resolve();
+        if (player1 == null || player2 == null) {
+            // One side vanished between queueing and pairing; the other keeps its place, and its stub is
+            // made again if it is paired later
+            dropStub(player1);
+            dropStub(player2);
+            if (player1 != null) enqueueMatch(opponent);
+            if (player2 != null) enqueueMatch(ticket);
+            return;
+        }
+        createGame(player1, player2);
+    }
+    
+    // Forget the stub for a remote player once no game here refers to it
+    private static void dropStub(Player player) {
+        if (player instanceof RemotePlayer) {
+            remotePlayers.remove(player.getKey(), player);
+        }
+    }
+    
+    // Pair everything that queued up while matchmaking was paused, oldest first within each band
+    private static void resumeMatchmaking() {
+        List<MatchTicket> queued = new ArrayList<>();
+        synchronized (matchPools) {
+            for (Deque<MatchTicket> pool : matchPools.values()) {
+                queued.addAll(pool);
+                pool.clear();
+            }
+        }
+        for (MatchTicket ticket : queued) {
+            enqueueMatch(ticket);
+        }
+        if (!queued.isEmpty()) {
+            logger.info("Matchmaking resumed with " + queued.size() + " queued tickets");
+        }
+    }
+    
+    private static void removeMatch(int band, String playerId) {
+        synchronized (matchPools) {
+            Deque<MatchTicket> pool = matchPools.get(band);
+            if (pool != null) {
+                pool.removeIf(t -> t.playerId.equals(playerId));
+            }
+        }
+    }
+    
+    private static void createGame(Player player1, Player player2) {
+        openGame(player1, player2, null).start();
+    }
+    
+    // Register a game between two players without starting it; tournament is null for ad-hoc games
+    private static Game openGame(Player player1, Player player2, Tournament tournament) {
+        // Pin the game to this node: draw ids until one hashes here
+        long key;
+        do {
+            key = ids.next();
+        } while (!ownsLocally(key));
+        String gameId = issue(IdAllocator.format(key), "game:" + player1.getId() + ":" + player2.getId());
+        
+        // Create new game
+        Game game = new Game(gameId, player1.getId(), player2.getId());
+        game.setTournament(tournament);
+        activeGames.put(key, game);
+        
+        // Update player game IDs (remote stubs forward this to the players' home nodes)
+        waitingPlayers.remove(player1.getKey());
+        waitingPlayers.remove(player2.getKey());
+        player1.setCurrentGameId(gameId);
+        player2.setCurrentGameId(gameId);
+        player1.setCurrentGame(game);
+        player2.setCurrentGame(game);
+        
+        // Log game creation; tournament rounds log one summary line instead
+        logger.log(tournament == null ? Level.INFO : Level.FINE, 
+                   "Game " + gameId + " created between " + player1.getName() + " and " + player2.getName());
+        
+        // Store in history
+        recordGameInHistory(player1.getId(), gameId);
+        recordGameInHistory(player2.getId(), gameId);
+        
+        // Track total games
+        totalGamesPlayed.incrementAndGet();
+        return game;
+    }
+    
+    private static void recordGameInHistory(String playerId, String gameId) {
+        if (activePlayers.containsKey(playerId)) {
+            playerGameHistory.computeIfAbsent(IdAllocator.parse(playerId), k -> new ArrayList<>()).add(gameId);
+        }
+    }
+    
+    // line holds <position> or <position>:<seq> from index from on; both are parsed in place so a move
+    // allocates nothing. Prediction tags are non-negative numbers, as the client numbers its moves.
+    private static void submitMove(Game game, String playerId, String line, int from) {
+        int end = line.indexOf(':', from);
+        int position = parseDigits(line, from, end < 0 ? line.length() : end);
+        int seq = end < 0 ? -1 : parseDigits(line, end + 1, line.length());
+        if (end >= 0 && seq < 0) {
+            Player player = findPlayer(playerId);
+            if (player != null) {
+                player.deliver("ERROR:Invalid move tag");
+            }
+        } else if (position < 0) {
+            Player player = findPlayer(playerId);
+            if (player != null) {
+                player.deliver(seq < 0 ? "ERROR:Invalid position format" : "MOVE_REJECTED:" + seq + ":Invalid position format");
+            }
+        } else {
+            game.makeMove(playerId, position, seq);
+        }
+    }
+    
+    // Decimal value of line[from, to), or -1 if it is empty, has a non-digit or needs more than 9 digits
+    private static int parseDigits(String line, int from, int to) {
+        if (from >= to || to - from > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
+    // Inbound bus traffic from another node; lines from one peer are handled in order
+    private static void handleClusterMessage(String line) {
+        String[] parts = line.split(":", 2);
+        String body = parts.length > 1 ? parts[1] : "";
+        switch (parts[0]) {
+            case "DELIVER": {
+                // DELIVER:<player_id>:<message>
+                String[] f = body.split(":", 2);
+                Player player = activePlayers.get(f[0]);
+                if (player != null) {
+                    player.deliver(f[1]);
+                }
+                break;
+            }
+            case "MATCH":
+                enqueueMatch(MatchTicket.decode(body));
+                break;
+            case "MATCH_CANCEL": {
+                // MATCH_CANCEL:<band>:<player_id>
+                String[] f = body.split(":", 2);
+                removeMatch(Integer.parseInt(f[0]), f[1]);
+                break;
+            }
+            case "GAME_ID": {
+                // GAME_ID:<player_id>:<game_id>, empty when the player leaves the game
+                String[] f = body.split(":", 2);
+                Player player = activePlayers.get(f[0]);
+                if (player != null) {
+                    String gameId = f[1].isEmpty() ? null : f[1];
+                    player.setCurrentGameId(gameId);
+                    if (gameId != null) {
+                        waitingPlayers.remove(IdAllocator.parse(f[0]));
+                        recordGameInHistory(f[0], gameId);
+                    }
+                }
+                break;
+            }
+            case "STAT": {
+                // STAT:<player_id>:<W|L|T|R>:<rating change>
+                String[] f = body.split(":", 3);
+                Player player = activePlayers.get(f[0]);
+                if (player != null) {
+                    switch (f[1]) {
+                        case "W": player.incrementWins(); break;
+                        case "L": player.incrementLosses(); break;
+                        case "T": player.incrementTies(); break;
+                        default: player.updateRating(Integer.parseInt(f[2])); break;
+                    }
+                }
+                break;
+            }
+            case "MOVE": {
+                // MOVE:<game_id>:<player_id>:<position>[:<seq>]
+                String[] f = body.split(":", 3);
+                Game game = gameFor(f[0]);
+                if (game != null) {
+                    submitMove(game, f[1], f[2], 0);
+                }
+                break;
+            }
+            case "GAME_CHAT": {
+                // GAME_CHAT:<game_id>:<player_id>:<text>
+                String[] f = body.split(":", 3);
+                Game game = gameFor(f[0]);
+                if (game != null) {
+                    game.broadcastChat(f[1], f[2]);
+                }
+                break;
+            }
+            case "LEAVE_GAME": {
+                // LEAVE_GAME:<game_id>:<player_id>
+                String[] f = body.split(":", 2);
+                Game game = gameFor(f[0]);
+                if (game != null) {
+                    game.playerDisconnected(f[1]);
+                }
+                remotePlayers.remove(IdAllocator.parse(f[1]));
+                break;
+            }
+            case "LOBBY_CHAT":
+                // LOBBY_CHAT:<sender>:<text>, already rate limited on the sender's node
+                defaultLobby.postChat("LOBBY_CHAT:" + body);
+                break;
+            default:
+                logger.warning("Unknown cluster message: " + line);
+                break;
+        }
+    }
+    
+    private static void startHandler(Transport transport) {
+        ClientHandler clientHandler = new ClientHandler(transport);
+        Thread clientThread = new Thread(clientHandler);
+        clientThread.setDaemon(true);
+        clientThread.start();
+    }
+    
+    // Gateways hold the client sockets and multiplex their sessions over a few links to this port.
+    // A link starts with "HELLO <secret>"; every session opened on it gets its own ClientHandler.
+    private static void startGatewayListener() throws IOException {
+        ServerSocket listener = openListener(config.gatewayPort);
+        gatewayListener = listener;
+        Thread acceptThread = new Thread(() -> {
+            while (!draining) {
+                try {
+                    Transport link = new Transport.SocketTransport(listener.accept());
+                    Thread linkThread = new Thread(() -> serveGatewayLink(link), "gateway-link");
+                    linkThread.setDaemon(true);
+                    linkThread.start();
+                } catch (IOException e) {
+                    if (!draining) {
+                        logger.warning("Error accepting gateway link: " + e.getMessage());
+                    }
+                }
+            }
+        }, "gateway-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        logger.info("Accepting gateway links on port " + config.gatewayPort);
+    }
+    
+    private static void serveGatewayLink(Transport link) {
+        try {
+            String hello = link.receive();
+            if (hello == null || !hello.equals("HELLO " + config.gatewaySecret)) {
+                logger.warning("Rejected gateway link from " + link.getRemoteAddress());
+                link.close();
+                return;
+            }
+        } catch (IOException e) {
+            link.close();
+            return;
+        }
+        
+        logger.info("Gateway linked from " + link.getRemoteAddress());
+        new Transport.MuxLink(link, session -> {
+            String refusal = admission.admit();
+            if (refusal != null) {
+                session.send(refusal);
+                session.close();
+                return;
+            }
+            startHandler(session);
+        }).run();
+        logger.info("Gateway link from " + link.getRemoteAddress() + " closed");
+    }
+    
+    // Connect a client in this JVM over an in-memory transport; returns the client's end
+    public static Transport connectLocal() {
+        startServices();
+        Transport[] pair = Transport.localPair();
+        currentConnections.incrementAndGet();
+        logger.info("New in-process connection");
+        startHandler(pair[0]);
+        return pair[1];
+    }
+    
     private static void setupLogger() {
         try {
             // Create file handler
-            FileHandler fileHandler = new FileHandler("server_log.txt", true);
+            FileHandler fileHandler = new FileHandler(config.logFile, true);
             fileHandler.setFormatter(new SimpleFormatter());
             logger.addHandler(fileHandler);
             
@@ -110,132 +685,2708 @@ public class TicTacToeServer {
                    "Active games: " + activeGames.size() + "\n" +
                    "Total registered players: " + activePlayers.size() + "\n" +
                    "Players waiting for match: " + waitingPlayers.size() + "\n" +
+                   "Load: " + admission.describe() + "\n" +
                    "-----------------------------");
     }
     
-    private static String calculateUptime() {
-        long diffInMillies = System.currentTimeMillis() - serverStartTime.getTime();
-        long days = diffInMillies / (24 * 60 * 60 * 1000);
-        diffInMillies %= (24 * 60 * 60 * 1000);
-        long hours = diffInMillies / (60 * 60 * 1000);
-        diffInMillies %= (60 * 60 * 1000);
-        long minutes = diffInMillies / (60 * 1000);
+    // Place a player in the default lobby, spilling over into an overflow lobby once it is full
+    private static GameLobby joinDefaultLobby(String playerId) {
+        List<Runnable> announcements = new ArrayList<>(1);
+        GameLobby target = joinDefaultLobby(playerId, announcements);
+        announcements.forEach(Runnable::run);
+        return target;
+    }
+    
+    // Membership only; the LOBBY_JOIN broadcast is added to announcements, for the caller to run once it
+    // holds no locks
+    private static GameLobby joinDefaultLobby(String playerId, List<Runnable> announcements) {
+        GameLobby target = null;
+        long version;
+        synchronized (lobbyLock) {
+            if (!defaultLobby.isFull()) {
+                target = defaultLobby;
+            } else {
+                for (GameLobby lobby : lobbies.values()) {
+                    if (lobby.isOverflow() && !lobby.isFull()) {
+                        target = lobby;
+                        break;
+                    }
+                }
+            }
+            
+            if (target == null) {
+                int overflowCount = 0;
+                for (GameLobby lobby : lobbies.values()) {
+                    if (lobby.isOverflow()) overflowCount++;
+                }
+                target = new GameLobby(defaultLobby.getName() + " #" + (overflowCount + 2), 
+                                       defaultLobby.getDescription(), true, playerId);
+                lobbies.put(target.getKey(), target);
+                logger.info("Default lobby is full. Spawned overflow lobby: " + target.getName());
+            }
+            
+            version = target.join(playerId);
+        }
         
-        return days + " days, " + hours + " hours, " + minutes + " minutes";
+        // Broadcast with the lock released, so a slow member cannot hold up every other join
+        if (version >= 0) {
+            GameLobby joined = target;
+            announcements.add(() -> joined.announceJoin(playerId, version));
+        }
+        return target;
     }
-
-    // Class to represent a player
-    private static class Player {
-        private String id;
-        private String name;
-        private ClientHandler clientHandler;
-        private int rating = 1200; // ELO rating
-        private int wins = 0;
-        private int losses = 0;
-        private int ties = 0;
-        private String currentLobbyId;
-        private String currentGameId;
-        private Timestamp lastActivity;
+    
+    // Remove empty overflow and player-created lobbies; the default lobby always stays
+    private static void pruneEmptyLobbies() {
+        synchronized (lobbyLock) {
+            lobbies.values().removeIf(lobby -> lobby != defaultLobby && lobby.getPlayerCount() == 0);
+        }
+    }
+    
+    private static String newSessionToken(String playerId) {
+        byte[] bytes = new byte[18];
+        tokenRandom.nextBytes(bytes);
+        return issue(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), "token:" + playerId);
+    }
+    
+    // Empty file readable and writable by the owner only, replacing any file already there
+    private static Path createPrivateFile(String file) throws IOException {
+        Path path = new File(file).toPath();
+        Files.deleteIfExists(path);
+        try {
+            return Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system: take read and write away from everyone but the owner instead
+            File created = Files.createFile(path).toFile();
+            created.setReadable(false, false);
+            created.setWritable(false, false);
+            created.setReadable(true, true);
+            created.setWritable(true, true);
+            return path;
+        }
+    }
+    
+    // Every id or token handed to clients passes through here, so a replay can map recorded values to its own.
+    // owner says what the value was issued for: a kind, then the connection ("c<n>") or ids it belongs to,
+    // colon separated. Values issued for the same owner are issued in the same order in any run, whichever
+    // thread issues them, so the replay pairs recorded and replayed values by owner.
+    private static String issue(String value, String owner) {
+        CommandJournal j = journal;
+        if (j != null) {
+            j.issued(owner, value);
+        }
+        JournalReplay r = replay;
+        if (r != null) {
+            r.issued(owner, value);
+        }
+        return value;
+    }
+    
+    // Take a player out of every lobby, game and queue they belong to
+    private static void removePlayer(Player player) {
+        String playerId = player.getId();
+        
+        // Leave current lobby
+        GameLobby lobby = lobbyFor(player.getCurrentLobbyId());
+        if (lobby != null) {
+            lobby.removePlayer(playerId);
+        }
+        
+        // Leave current game
+        String gameId = player.getCurrentGameId();
+        if (gameId != null) {
+            Game game = gameFor(gameId);
+            if (game != null) {
+                game.playerDisconnected(playerId);
+            } else if (!ownsLocally(IdAllocator.parse(gameId))) {
+                cluster.send(ownerOf(IdAllocator.parse(gameId)), "LEAVE_GAME:" + gameId + ":" + playerId);
+            }
+        }
+        
+        // Remove from waiting players
+        cancelMatch(player);
+        Tournament tournament = player.getTournament();
+        if (tournament != null) {
+            tournament.withdraw(player);
+        }
+        
+        // Remove player from active players
+        activePlayers.remove(playerId);
+        if (player.getSessionToken() != null) {
+            sessionTokens.remove(player.getSessionToken());
+        }
+    }
+    
+    // Grace period ran out without a RESUME, so the player is gone for good
+    private static void expireSession(Player player) {
+        if (!player.expire()) {
+            return;
+        }
+        
+        removePlayer(player);
+        logger.info("Session for player " + player.getName() + " (" + player.getId() + ") expired");
+    }
+    
+    // SIGTERM (or any normal exit) drains on the way down; the JVM exits once the hook returns.
+    // SIGKILL is the way to stop a server without waiting for its games.
+    private static void installDrainHandler() {
+        drainOnShutdown = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(TicTacToeServer::drain, "drain"));
+    }
+    
+    // Graceful restart: stop taking connections and new games, give running games up to drain.timeout to
+    // finish, write what is left to the handoff file for the next process, then point every client at it
+    private static void drain() {
+        synchronized (TicTacToeServer.class) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        drainLog(Level.INFO, "Draining: closed to new connections and games, waiting up to " + config.drainTimeoutSeconds + 
+                 "s for " + unfinishedGames() + " running games");
+        closeListener(clientListener);
+        closeListener(gatewayListener);
+        
+        for (Player player : activePlayers.values()) {
+            if (cancelMatch(player)) {
+                player.deliver("SERVER_INFO:The server is restarting, so matchmaking is closed. Please search again in a moment.");
+            }
+        }
+        
+        long deadline = System.currentTimeMillis() + config.drainTimeoutSeconds * 1000L;
+        while (unfinishedGames() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(DRAIN_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        
+        // From here on games and sessions belong to the handoff file, so moves are refused and
+        // dropped connections are not held for a resume
+        handedOff = true;
+        if (!config.handoffFile.isEmpty()) {
+            try {
+                writeHandoff();
+            } catch (IOException e) {
+                drainLog(Level.SEVERE, "Error writing handoff file: " + e.getMessage());
+            }
+        } else if (unfinishedGames() > 0) {
+            drainLog(Level.WARNING, "No handoff file configured, abandoning " + unfinishedGames() + " running games");
+        }
+        
+        // Clients reconnect after the hint and resume their session on the next process
+        for (Player player : activePlayers.values()) {
+            ClientHandler handler = player.getClientHandler();
+            if (handler != null) {
+                handler.sendMessage("RETRY_AFTER:1:Server is restarting");
+                handler.closeConnection();
+            }
+        }
+        CommandJournal j = journal;
+        if (j != null) {
+            j.close();
+        }
+        drainLog(Level.INFO, "Drain finished");
+    }
+    
+    // LogManager closes every handler as soon as shutdown begins, and the drain runs in a shutdown hook,
+    // so its messages fall back to stderr once the handlers are gone
+    private static void drainLog(Level level, String message) {
+        if (logger.getHandlers().length > 0) {
+            logger.log(level, message);
+        } else {
+            System.err.println(level + ": " + message);
+        }
+    }
+    
+    private static int unfinishedGames() {
+        int count = 0;
+        for (Game game : activeGames.values()) {
+            if (!game.isGameOver()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static void closeListener(ServerSocket listener) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+    }
+    
+    // One line per unfinished game and per session, written next to the target and renamed into place
+    // so the next process never reads half a file. It holds session tokens, so it is owner-only:
+    //   PLAYER:<id>:<token>:<rating>:<wins>:<losses>:<ties>:<game id or ->:<name>
+    //   GAME:<id>:<X id>:<O id>:<board>:<turn>:<X ms left>:<O ms left>
+    private static void writeHandoff() throws IOException {
+        List<String> games = new ArrayList<>();
+        Set<String> gameIds = new HashSet<>();
+        for (Game game : activeGames.values()) {
+            String frozen = game.freeze();
+            if (frozen != null) {
+                games.add("GAME:" + frozen);
+                gameIds.add(game.getGameId());
+            }
+        }
+        
+        File target = new File(config.handoffFile);
+        File partial = new File(config.handoffFile + ".tmp");
+        int players = 0;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(createPrivateFile(partial.getPath()), StandardCharsets.UTF_8))) {
+            out.println(HANDOFF_HEADER);
+            for (Player player : activePlayers.values()) {
+                String token = player.getSessionToken();
+                if (token == null || !sessionTokens.containsKey(token)) {
+                    continue;
+                }
+                String gameId = player.getCurrentGameId();
+                out.println("PLAYER:" + player.getId() + ":" + token + ":" + player.getRating() + ":" + 
+                            player.getWins() + ":" + player.getLosses() + ":" + player.getTies() + ":" + 
+                            (gameId != null && gameIds.contains(gameId) ? gameId : "-") + ":" + player.getName());
+                players++;
+            }
+            for (String game : games) {
+                out.println(game);
+            }
+            if (out.checkError()) {
+                throw new IOException("Error writing " + partial);
+            }
+        }
+        Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        drainLog(Level.INFO, "Handed off " + games.size() + " games and " + players + " sessions to " + config.handoffFile);
+    }
+    
+    // Id generation for this process. With a handoff file the next process starts while this one still
+    // issues ids, so each start takes the generation after the last one, recorded next to the handoff file.
+    private static int nextGeneration() {
+        if (config.handoffFile.isEmpty()) {
+            return 0;
+        }
+        File file = new File(config.handoffFile + ".generation");
+        int generation = 0;
+        try {
+            if (file.isFile()) {
+                generation = (Integer.parseInt(Files.readString(file.toPath()).trim()) + 1) & ((1 << IdAllocator.GENERATION_BITS) - 1);
+            }
+            Files.writeString(file.toPath(), generation + System.lineSeparator());
+        } catch (IOException | NumberFormatException e) {
+            logger.warning("Error updating id generation in " + file + ": " + e.getMessage());
+        }
+        return generation;
+    }
+    
+    // True while a draining process may still write the handoff file: until the first import, and at most
+    // for its drain timeout after this process started
+    private static boolean handoffExpected() {
+        return System.currentTimeMillis() < handoffExpectedUntil;
+    }
+    
+    // Take over the sessions and games a draining process left in the handoff file. Runs at startup and
+    // again on a RESUME with an unknown token while handoffExpected, since the old process may finish its
+    // drain after this one started. The file is renamed first, so it is only ever imported once; a caller
+    // that waited for the lock while another thread imported finds the sessions already registered. Lobby
+    // joins are broadcast after the lock is released.
+    private static void importHandoff() {
+        if (config.handoffFile.isEmpty() || !new File(config.handoffFile).isFile()) {
+            return;
+        }
+        List<Runnable> announcements = new ArrayList<>();
+        synchronized (handoffLock) {
+            importHandoff(announcements);
+        }
+        announcements.forEach(Runnable::run);
+    }
+    
+    private static void importHandoff(List<Runnable> announcements) {
+        File file = new File(config.handoffFile);
+        File taken = new File(config.handoffFile + ".imported");
+        if (!file.isFile() || !file.renameTo(taken)) {
+            return;
+        }
+        handoffExpectedUntil = 0; // One handoff per start
+        
+        int players = 0;
+        int games = 0;
+        Set<String> skipped = new HashSet<>(); // Players whose id is already taken here
+        try (BufferedReader in = Files.newBufferedReader(taken.toPath(), StandardCharsets.UTF_8)) {
+            if (!HANDOFF_HEADER.equals(in.readLine())) {
+                throw new IOException("Not a handoff file");
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("PLAYER:")) {
+                    String[] parts = line.split(":", 9);
+                    if (activePlayers.get(parts[1]) != null || sessionTokens.containsKey(parts[2])) {
+                        logger.warning("Not importing player " + parts[1] + ": id already in use");
+                        skipped.add(parts[1]);
+                        continue;
+                    }
+                    Player player = new Player(parts[1], parts[8], null);
+                    player.restoreStats(Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), 
+                                        Integer.parseInt(parts[5]), Integer.parseInt(parts[6]));
+                    player.setSessionToken(parts[2]);
+                    activePlayers.put(player.getId(), player);
+                    sessionTokens.put(parts[2], player.getId());
+                    player.setCurrentLobbyId(joinDefaultLobby(player.getId(), announcements).getId());
+                    if (!parts[7].equals("-")) {
+                        player.setCurrentGameId(parts[7]);
+                    }
+                    
+                    // Held exactly like a dropped connection until the client resumes
+                    player.detach(scheduler.schedule(() -> expireSession(player), 
+                                                     RESUME_GRACE_SECONDS, TimeUnit.SECONDS));
+                    players++;
+                } else if (line.startsWith("GAME:")) {
+                    String[] parts = line.split(":");
+                    if (activeGames.containsKey(IdAllocator.parse(parts[1])) || 
+                        skipped.contains(parts[2]) || skipped.contains(parts[3])) {
+                        logger.warning("Not importing game " + parts[1] + ": id or player already in use");
+                        for (int i = 2; i <= 3; i++) {
+                            Player player = skipped.contains(parts[i]) ? null : activePlayers.get(parts[i]);
+                            if (player != null && parts[1].equals(player.getCurrentGameId())) {
+                                player.setCurrentGameId(null);
+                            }
+                        }
+                        continue;
+                    }
+                    Game game = new Game(parts[1], parts[2], parts[3]);
+                    game.restore(parts[4], parts[5].charAt(0), Long.parseLong(parts[6]), Long.parseLong(parts[7]));
+                    activeGames.put(IdAllocator.parse(parts[1]), game);
+                    games++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Error importing handoff file " + taken + ": " + e.getMessage());
+            return;
+        }
+        logger.info("Took over " + games + " games and " + players + " sessions from " + config.handoffFile);
+    }
+    
+    private static synchronized List<Player> getRanking() {
+        long now = System.currentTimeMillis();
+        if (now - rankingBuiltAt >= RANKING_REFRESH_MS) {
+            ranking = activePlayers.values().stream()
+                .filter(p -> p.getTotalGames() >= 5) // Minimum games to be ranked
+                .sorted(Comparator.comparingInt(Player::getRating).reversed())
+                .toList();
+            rankingBuiltAt = now;
+        }
+        return ranking;
+    }
+    
+    private static void flushLobbyChat() {
+        // Degraded chat goes out in fewer, larger frames
+        if (admission.isChatDegraded() && ++chatFlushSkips % DEGRADED_CHAT_FLUSH_EVERY != 0) {
+            return;
+        }
+        for (GameLobby lobby : lobbies.values()) {
+            try {
+                lobby.flushChat();
+            } catch (Exception e) {
+                logger.warning("Error flushing chat for lobby " + lobby.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private static String calculateUptime() {
+        long diffInMillies = System.currentTimeMillis() - serverStartTime.getTime();
+        long days = diffInMillies / (24 * 60 * 60 * 1000);
+        diffInMillies %= (24 * 60 * 60 * 1000);
+        long hours = diffInMillies / (60 * 60 * 1000);
+        diffInMillies %= (60 * 60 * 1000);
+        long minutes = diffInMillies / (60 * 1000);
+        
+        return days + " days, " + hours + " hours, " + minutes + " minutes";
+    }
+
+    // Bootstrap settings: built-in defaults, then a properties file, then --key=value command line flags
+    static final class ServerConfig {
+        static final String DEFAULT_FILE = "server.properties";
+        static final String USAGE = 
+            "Usage: TicTacToeServer [--config=<file>] [--bind=<address>] [--port=<n>] [--backlog=<n>]\n" +
+            "                       [--workers=<n>] [--max-clients=<n>] [--max-lobby-size=<n>]\n" +
+            "                       [--log-file=<file>] [--stats-interval=<seconds>]\n" +
+            "                       [--warmup-games=<n>] [--warmup-only] [--match-band=<points>]\n" +
+            "                       [--cluster-nodes=<host:port>,...] [--cluster-node=<index>]\n" +
+            "                       [--cluster-secret=<secret>]\n" +
+            "                       [--gateway-port=<n>] [--gateway-secret=<secret>]\n" +
+            "                       [--tournament-noshow=<seconds>] [--tournament-round-break=<seconds>]\n" +
+            "                       [--clock-base=<seconds>] [--clock-increment=<seconds>]\n" +
+            "                       [--journal-file=<file>] [--replay=<journal file>] [--max-alloc-per-move=<bytes>]\n" +
+            "                       [--admission-lag-ms=<ms>] [--admission-backlog=<lines>]\n" +
+            "                       [--admission-gc-percent=<n>] [--admission-cpu-percent=<n>]\n" +
+            "                       [--admission-retry-after=<seconds>]\n" +
+            "                       [--drain-timeout=<seconds>] [--handoff-file=<file>]\n" +
+            "Flags use the same names as keys in the properties file, with '-' in place of '.'.\n" +
+            "AppCDS (classes must come from a jar): run once with -XX:ArchiveClassesAtExit=server.jsa\n" +
+            "--warmup-games=5000 --warmup-only, then start normally with -XX:SharedArchiveFile=server.jsa.\n" +
+            "Allocation check: --replay=perf/move-path.journal --max-alloc-per-move=2 exits 1 when MOVE\n" +
+            "commands allocate more than that many bytes each on average.";
+        
+        String bindAddress = "0.0.0.0";
+        int port = DEFAULT_PORT;
+        int backlog = 50;
+        int workers = 1; // Threads in the shared scheduler (chat flushes, session expiry, stats)
+        int maxClients = 100;
+        int maxLobbySize = 500;
+        String logFile = "server_log.txt";
+        int statsIntervalSeconds = 60;
+        int warmupGames = 0;
+        boolean warmupOnly = false;
+        String clusterNodes = ""; // Bus address (host:port) of every node, in node-index order; empty for one node
+        int clusterNode = 0; // This node's index in clusterNodes
+        String clusterSecret = ""; // Shared secret peers present when opening a bus link; required unless bound to loopback
+        int ratingBand = 200; // Width of a matchmaking pool in rating points
+        int gatewayPort = 0; // Port for multiplexed links from TicTacToeGateway; 0 disables it
+        String gatewaySecret = ""; // Shared secret a gateway must present when opening a link
+        int tournamentNoShowSeconds = 60; // Idle time after which the player on turn forfeits a tournament game
+        int tournamentRoundBreakSeconds = 5; // Pause between the last result of a round and the next pairings
+        int clockBaseSeconds = 120; // Time control: each side's starting time...
+        int clockIncrementSeconds = 2; // ...and what each move adds back
+        String journalFile = ""; // Binary record of every inbound command; empty disables it
+        String replayFile = ""; // Journal to replay headlessly instead of serving clients
+        int maxAllocPerMove = -1; // Replay fails if MOVE commands allocate more than this on average; -1 disables it
+        int admissionLagMs = 200; // Load limits: scheduler lateness...
+        int admissionBacklog = 10000; // ...outbound lines queued for peers or lobby chat...
+        int admissionGcPercent = 25; // ...share of wall time spent in GC...
+        int admissionCpuPercent = 90; // ...and process CPU, as a share of all cores
+        int admissionRetryAfterSeconds = 10; // Hint sent to connections turned away
+        int drainTimeoutSeconds = 60; // On SIGTERM, how long running games get to finish before being handed off
+        String handoffFile = ""; // Where a draining process leaves its games for the next one; empty to forfeit them
+        
+        static ServerConfig load(String[] args) throws IOException {
+            Properties properties = new Properties();
+            String file = DEFAULT_FILE;
+            boolean explicitFile = false;
+            
+            // Flags win over the file, so collect them first and apply them last
+            Properties flags = new Properties();
+            for (String arg : args) {
+                if (!arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unexpected argument " + arg);
+                }
+                int eq = arg.indexOf('=');
+                String key = (eq < 0 ? arg.substring(2) : arg.substring(2, eq)).replace('-', '.');
+                String value = eq < 0 ? "true" : arg.substring(eq + 1);
+                if (key.equals("config")) {
+                    file = value;
+                    explicitFile = true;
+                } else {
+                    flags.setProperty(key, value);
+                }
+            }
+            
+            File configFile = new File(file);
+            if (configFile.isFile()) {
+                try (Reader reader = new FileReader(configFile)) {
+                    properties.load(reader);
+                }
+            } else if (explicitFile) {
+                throw new FileNotFoundException(file);
+            }
+            properties.putAll(flags);
+            
+            ServerConfig config = new ServerConfig();
+            for (String key : properties.stringPropertyNames()) {
+                config.set(key, properties.getProperty(key).trim());
+            }
+            if (!config.clusterNodes.isEmpty() && config.clusterNode >= config.clusterNodes.split(",").length) {
+                throw new IllegalArgumentException("cluster.node " + config.clusterNode + " is not in cluster.nodes");
+            }
+            // The bus carries moves, results and messages for any player, so it is never left open to the network
+            if (!config.clusterNodes.isEmpty() && config.clusterSecret.isEmpty() && 
+                !InetAddress.getByName(config.bindAddress).isLoopbackAddress()) {
+                throw new IllegalArgumentException("cluster.secret is required unless bind is a loopback address");
+            }
+            return config;
+        }
+        
+        private void set(String key, String value) {
+            switch (key) {
+                case "bind": bindAddress = value; break;
+                case "port": port = parse(key, value, 0, 65535); break;
+                case "backlog": backlog = parse(key, value, 1, 65535); break;
+                case "workers": workers = parse(key, value, 1, 64); break;
+                case "max.clients": maxClients = parse(key, value, 1, Integer.MAX_VALUE); break;
+                case "max.lobby.size": maxLobbySize = parse(key, value, 1, Integer.MAX_VALUE); break;
+                case "log.file": logFile = value; break;
+                case "stats.interval": statsIntervalSeconds = parse(key, value, 1, 86400); break;
+                case "warmup.games": warmupGames = parse(key, value, 0, Integer.MAX_VALUE); break;
+                case "warmup.only": warmupOnly = Boolean.parseBoolean(value); break;
+                case "match.band": ratingBand = parse(key, value, 1, 10000); break;
+                case "cluster.nodes": clusterNodes = value; break;
+                case "cluster.node": clusterNode = parse(key, value, 0, 1023); break;
+                case "cluster.secret": clusterSecret = value; break;
+                case "gateway.port": gatewayPort = parse(key, value, 0, 65535); break;
+                case "gateway.secret": gatewaySecret = value; break;
+                case "tournament.noshow": tournamentNoShowSeconds = parse(key, value, 1, 3600); break;
+                case "tournament.round.break": tournamentRoundBreakSeconds = parse(key, value, 0, 3600); break;
+                case "clock.base": clockBaseSeconds = parse(key, value, 1, 86400); break;
+                case "clock.increment": clockIncrementSeconds = parse(key, value, 0, 3600); break;
+                case "journal.file": journalFile = value; break;
+                case "replay": replayFile = value; break;
+                case "max.alloc.per.move": maxAllocPerMove = parse(key, value, -1, Integer.MAX_VALUE); break;
+                case "admission.lag.ms": admissionLagMs = parse(key, value, 1, 60000); break;
+                case "admission.backlog": admissionBacklog = parse(key, value, 1, Integer.MAX_VALUE); break;
+                case "admission.gc.percent": admissionGcPercent = parse(key, value, 1, 100); break;
+                case "admission.cpu.percent": admissionCpuPercent = parse(key, value, 1, 100); break;
+                case "admission.retry.after": admissionRetryAfterSeconds = parse(key, value, 1, 3600); break;
+                case "drain.timeout": drainTimeoutSeconds = parse(key, value, 0, 86400); break;
+                case "handoff.file": handoffFile = value; break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting " + key);
+            }
+        }
+        
+        private static int parse(String key, String value, int min, int max) {
+            try {
+                int n = Integer.parseInt(value);
+                if (n >= min && n <= max) {
+                    return n;
+                }
+            } catch (NumberFormatException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException(key + " must be a number between " + min + " and " + max + ", got " + value);
+        }
+    }
+    
+    // Class to represent a player
+    private static class Player {
+        private String id;
+        private final long key; // Numeric form of id, for map keys
+        private String name;
+        private volatile ClientHandler clientHandler;
+        private int rating = 1200; // ELO rating
+        private int wins = 0;
+        private int losses = 0;
+        private int ties = 0;
+        private String currentLobbyId;
+        private String currentGameId;
+        private Game currentGame; // The game behind currentGameId once known to be hosted here, so moves skip the lookup
+        private volatile long lastActivity; // Epoch ms of the last command
+        private volatile int handle = -1; // Registry handle while registered on this node
+        private volatile Tournament tournament; // Entered or playing, null otherwise
+        private final ChatRateLimiter chatLimiter = new ChatRateLimiter(CHAT_BURST, CHAT_MESSAGES_PER_SECOND);
+        
+        // Session resumption state
+        private String sessionToken;
+        private boolean detached = false;
+        private boolean expired = false;
+        private ScheduledFuture<?> expiryTask;
+        private final Deque<String> missedMessages = new ArrayDeque<>();
+        
+        public Player(String id, String name, ClientHandler clientHandler) {
+            this.id = id;
+            this.key = IdAllocator.parse(id);
+            this.name = name;
+            this.clientHandler = clientHandler;
+            this.lastActivity = System.currentTimeMillis();
+            this.currentLobbyId = defaultLobby.getId(); // Join default lobby
+        }
+        
+        public String getId() {
+            return id;
+        }
+        
+        public long getKey() {
+            return key;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public void setName(String name) {
+            this.name = name;
+        }
+        
+        public int getHandle() {
+            return handle;
+        }
+        
+        public void setHandle(int handle) {
+            this.handle = handle;
+        }
+        
+        public ClientHandler getClientHandler() {
+            return clientHandler;
+        }
+        
+        public String getSessionToken() {
+            return sessionToken;
+        }
+        
+        public void setSessionToken(String sessionToken) {
+            this.sessionToken = sessionToken;
+        }
+        
+        // Connection dropped: keep the player around and start buffering what they miss
+        public synchronized void detach(ScheduledFuture<?> expiryTask) {
+            this.detached = true;
+            this.expiryTask = expiryTask;
+        }
+        
+        // Bind a new connection; returns the buffered messages, or null if the session already expired
+        public synchronized List<String> attach(ClientHandler handler) {
+            if (expired) {
+                return null;
+            }
+            if (expiryTask != null) {
+                expiryTask.cancel(false);
+                expiryTask = null;
+            }
+            
+            List<String> missed = new ArrayList<>(missedMessages);
+            missedMessages.clear();
+            detached = false;
+            clientHandler = handler;
+            return missed;
+        }
+        
+        // Returns false if the player reattached before the grace period ran out
+        public synchronized boolean expire() {
+            if (!detached || expired) {
+                return false;
+            }
+            expired = true;
+            missedMessages.clear();
+            return true;
+        }
+        
+        public synchronized void bufferMessage(String message) {
+            if (!detached) {
+                return;
+            }
+            if (missedMessages.size() == RESUME_BUFFER_SIZE) {
+                missedMessages.removeFirst();
+            }
+            missedMessages.addLast(message);
+        }
+        
+        public int getRating() {
+            return rating;
+        }
+        
+        public void updateRating(int change) {
+            this.rating += change;
+        }
+        
+        // Stats carried over from the process that handed this player off
+        public void restoreStats(int rating, int wins, int losses, int ties) {
+            this.rating = rating;
+            this.wins = wins;
+            this.losses = losses;
+            this.ties = ties;
+        }
+        
+        public void incrementWins() {
+            wins++;
+        }
+        
+        public void incrementLosses() {
+            losses++;
+        }
+        
+        public void incrementTies() {
+            ties++;
+        }
+        
+        public int getWins() {
+            return wins;
+        }
+        
+        public int getLosses() {
+            return losses;
+        }
+        
+        public int getTies() {
+            return ties;
+        }
+        
+        public int getTotalGames() {
+            return wins + losses + ties;
+        }
+        
+        public String getCurrentLobbyId() {
+            return currentLobbyId;
+        }
+        
+        public void setCurrentLobbyId(String lobbyId) {
+            this.currentLobbyId = lobbyId;
+        }
+        
+        public String getCurrentGameId() {
+            return currentGameId;
+        }
+        
+        public void setCurrentGameId(String gameId) {
+            this.currentGameId = gameId;
+        }
+        
+        // Null unless the game hosted here for currentGameId was recorded with setCurrentGame
+        public Game getCurrentGame() {
+            Game game = currentGame;
+            return game != null && game.getGameId().equals(currentGameId) ? game : null;
+        }
+        
+        public void setCurrentGame(Game game) {
+            this.currentGame = game;
+        }
+        
+        public Tournament getTournament() {
+            return tournament;
+        }
+        
+        public void setTournament(Tournament tournament) {
+            this.tournament = tournament;
+        }
+        
+        public boolean tryChat() {
+            return chatLimiter.tryAcquire();
+        }
+        
+        public void updateLastActivity() {
+            this.lastActivity = System.currentTimeMillis();
+        }
+        
+        public String getStats() {
+            double winRate = getTotalGames() > 0 ? (double) wins / getTotalGames() * 100 : 0;
+            return String.format("Name: %s | Rating: %d | W/L/T: %d/%d/%d | Win Rate: %.1f%%", 
+                                name, rating, wins, losses, ties, winRate);
+        }
+        
+        // Send a message to wherever this player is connected
+        public void deliver(CharSequence message) {
+            ClientHandler handler = clientHandler;
+            if (handler != null) {
+                handler.sendMessage(message);
+            } else {
+                // Handed over from another process and not resumed yet
+                bufferMessage(message.toString());
+            }
+        }
+    }
+    
+    // Stand-in for a player connected to another node, playing a game hosted here.
+    // Messages and result updates are forwarded to the player's home node over the bus.
+    private static class RemotePlayer extends Player {
+        private final int homeNode;
+        
+        public RemotePlayer(String id, String name, int rating, int homeNode) {
+            super(id, name, null);
+            super.updateRating(rating - super.getRating());
+            this.homeNode = homeNode;
+        }
+        
+        @Override
+        public void deliver(CharSequence message) {
+            cluster.send(homeNode, "DELIVER:" + getId() + ":" + message);
+        }
+        
+        @Override
+        public void setCurrentGameId(String gameId) {
+            super.setCurrentGameId(gameId);
+            cluster.send(homeNode, "GAME_ID:" + getId() + ":" + (gameId == null ? "" : gameId));
+        }
+        
+        @Override
+        public void incrementWins() {
+            super.incrementWins();
+            cluster.send(homeNode, "STAT:" + getId() + ":W:0");
+        }
+        
+        @Override
+        public void incrementLosses() {
+            super.incrementLosses();
+            cluster.send(homeNode, "STAT:" + getId() + ":L:0");
+        }
+        
+        @Override
+        public void incrementTies() {
+            super.incrementTies();
+            cluster.send(homeNode, "STAT:" + getId() + ":T:0");
+        }
+        
+        @Override
+        public void updateRating(int change) {
+            super.updateRating(change);
+            cluster.send(homeNode, "STAT:" + getId() + ":R:" + change);
+        }
+    }
+    
+    // A player waiting in a rating band's pool, possibly on behalf of another node
+    private static class MatchTicket {
+        final int band;
+        final int homeNode;
+        final int rating;
+        final String playerId;
+        final String name;
+        
+        MatchTicket(int band, int homeNode, int rating, String playerId, String name) {
+            this.band = band;
+            this.homeNode = homeNode;
+            this.rating = rating;
+            this.playerId = playerId;
+            this.name = name;
+        }
+        
+        // band:home_node:rating:player_id:name
+        String encode() {
+            return band + ":" + homeNode + ":" + rating + ":" + playerId + ":" + name;
+        }
+        
+        static MatchTicket decode(String s) {
+            String[] f = s.split(":", 5);
+            return new MatchTicket(Integer.parseInt(f[0]), Integer.parseInt(f[1]), 
+                                   Integer.parseInt(f[2]), f[3], f[4]);
+        }
+        
+        private boolean isHome() {
+            return cluster == null || homeNode == cluster.self();
+        }
+        
+        // Remote tickets are withdrawn with MATCH_CANCEL, so only local ones can go stale silently
+        boolean isLive() {
+            return !isHome() || waitingPlayers.contains(IdAllocator.parse(playerId));
+        }
+        
+        Player resolve() {
+            if (isHome()) {
+                return activePlayers.get(playerId);
+            }
+            RemotePlayer stub = new RemotePlayer(playerId, name, rating, homeNode);
+            remotePlayers.put(IdAllocator.parse(playerId), stub);
+            return stub;
+        }
+    }
+    
+    // A tournament hosted on this node. Each round is paired in one pass and its games are created as a
+    // batch, then started in slices on the shared scheduler. Results come back through gameFinished; once
+    // the last game of a round reports, the next round follows after config.tournamentRoundBreakSeconds.
+    // Standings go to every entrant as deltas: only the entrants whose score changed since the last update.
+    private static class Tournament {
+        enum Format { SWISS, ROUND_ROBIN, SINGLE_ELIMINATION }
+        
+        private static final int WIN_POINTS = 2;
+        private static final int TIE_POINTS = 1;
+        private static final int START_SLICE = 64; // Games started per scheduler task
+        private static final int MAX_REPLAYS = 2; // Drawn knockout games replayed before the higher seed advances
+        
+        private final String id;
+        private final long key;
+        private final String name;
+        private final Format format;
+        private final String hostId;
+        private final List<Entrant> entrants = new ArrayList<>(); // Seed order once started
+        private final Map<Game, Pairing> liveGames = new HashMap<>();
+        private final Set<Entrant> changed = new LinkedHashSet<>();
+        private boolean started = false;
+        private boolean finished = false;
+        private int round = 0;
+        private int totalRounds;
+        private int pendingGames = 0;
+        private long standingsVersion = 0;
+        
+        // One player's record; seed doubles as the index in entrants
+        private static class Entrant {
+            final String playerId;
+            String name;
+            int seed;
+            int points, wins, losses, ties;
+            int gamesAsX = 0;
+            boolean hadBye = false;
+            boolean out = false; // Eliminated or withdrawn
+            final BitSet opponents = new BitSet(); // Seeds already played
+            
+            Entrant(Player player) {
+                this.playerId = player.getId();
+                this.name = player.getName();
+            }
+            
+            void appendTo(StringBuilder sb) {
+                sb.append(playerId).append(":").append(name).append(":").append(points).append(":")
+                  .append(wins).append(":").append(losses).append(":").append(ties).append(":")
+                  .append(out ? 1 : 0).append("|");
+            }
+        }
+        
+        private static class Pairing {
+            final Entrant x;
+            final Entrant o;
+            final int replays;
+            
+            Pairing(Entrant x, Entrant o, int replays) {
+                this.x = x;
+                this.o = o;
+                this.replays = replays;
+            }
+        }
+        
+        public Tournament(String name, Format format, Player host) {
+            this.id = issue(ids.nextWire(), "tournament:" + host.getId());
+            this.key = IdAllocator.parse(id);
+            this.name = name;
+            this.format = format;
+            this.hostId = host.getId();
+        }
+        
+        public String getId() {
+            return id;
+        }
+        
+        public long getKey() {
+            return key;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public boolean isHost(Player player) {
+            return hostId.equals(player.getId());
+        }
+        
+        public synchronized boolean isRunning() {
+            return started && !finished;
+        }
+        
+        public synchronized String describe() {
+            return id + ":" + name + ":" + format + ":" + (finished ? "FINISHED" : started ? "RUNNING" : "OPEN") 
+                   + ":" + entrants.size();
+        }
+        
+        // Returns false once the tournament has started
+        public synchronized boolean join(Player player) {
+            if (started) {
+                return false;
+            }
+            if (entrantOf(player.getId()) == null) {
+                entrants.add(new Entrant(player));
+            }
+            player.setTournament(this);
+            return true;
+        }
+        
+        // Before the start the entry is dropped; afterwards the player sits out every later round
+        public synchronized void withdraw(Player player) {
+            player.setTournament(null);
+            Entrant entrant = entrantOf(player.getId());
+            if (entrant == null) {
+                return;
+            }
+            if (!started) {
+                entrants.remove(entrant);
+            } else if (!entrant.out) {
+                entrant.out = true;
+                changed.add(entrant);
+            }
+        }
+        
+        // Returns an error message, or null once the first round is under way
+        public String start() {
+            synchronized (this) {
+                if (started) {
+                    return "Tournament already started";
+                }
+                if (entrants.size() < 2) {
+                    return "At least two entrants are needed";
+                }
+                for (Entrant e : entrants) {
+                    Player p = activePlayers.get(e.playerId);
+                    if (p != null && inLiveGame(p)) {
+                        return e.name + " is still playing a game";
+                    }
+                }
+                started = true;
+                
+                // Seed by rating, strongest first
+                entrants.sort(Comparator.comparingInt((Entrant e) -> {
+                    Player p = activePlayers.get(e.playerId);
+                    return p != null ? -p.getRating() : 0;
+                }));
+                for (int i = 0; i < entrants.size(); i++) {
+                    entrants.get(i).seed = i;
+                    changed.add(entrants.get(i));
+                }
+                int n = entrants.size();
+                int log2 = 32 - Integer.numberOfLeadingZeros(n - 1);
+                totalRounds = format == Format.ROUND_ROBIN ? (n % 2 == 0 ? n - 1 : n) : Math.max(1, log2);
+            }
+            logger.info("Tournament " + name + " (" + id + ") started: " + format + ", " + totalRounds + " rounds");
+            nextRound();
+            return null;
+        }
+        
+        private void nextRound() {
+            List<Game> games = new ArrayList<>();
+            List<Entrant> byes = new ArrayList<>();
+            int roundNumber;
+            synchronized (this) {
+                if (finished || draining) {
+                    return;
+                }
+                
+                // Entrants whose session is gone for good no longer get paired
+                for (Entrant e : entrants) {
+                    if (!e.out && !activePlayers.containsKey(e.playerId)) {
+                        e.out = true;
+                        changed.add(e);
+                    }
+                }
+                
+                List<Entrant> field = new ArrayList<>();
+                for (Entrant e : entrants) {
+                    if (!e.out) {
+                        field.add(e);
+                    }
+                }
+                boolean done = format == Format.SINGLE_ELIMINATION ? field.size() < 2 
+                                                                    : round >= totalRounds || field.size() < 2;
+                if (done) {
+                    finish(field);
+                    return;
+                }
+                
+                long began = System.nanoTime();
+                round++;
+                roundNumber = round;
+                List<Pairing> pairings = new ArrayList<>(field.size() / 2);
+                switch (format) {
+                    case SWISS: pairSwiss(field, pairings, byes); break;
+                    case ROUND_ROBIN: pairRoundRobin(pairings, byes); break;
+                    default: pairKnockout(field, pairings, byes); break;
+                }
+                
+                for (Pairing pairing : pairings) {
+                    Game game = open(pairing);
+                    if (game != null) {
+                        games.add(game);
+                    } else {
+                        // Opponent vanished or is busy in another game since the field was drawn up
+                        byes.add(available(pairing.x) ? pairing.x : pairing.o);
+                    }
+                }
+                for (Entrant e : byes) {
+                    e.hadBye = true;
+                    e.points += WIN_POINTS;
+                    changed.add(e);
+                }
+                pendingGames = games.size();
+                logger.info("Tournament " + id + " round " + round + ": " + games.size() + " games paired and created in " + 
+                            (System.nanoTime() - began) / 1_000_000 + "ms");
+            }
+            
+            broadcast("TOURNAMENT_ROUND:" + id + ":" + roundNumber + ":" + totalRounds);
+            for (Entrant e : byes) {
+                sendTo(e, "TOURNAMENT_BYE:" + id + ":" + roundNumber);
+            }
+            publishStandings();
+            
+            // Game starts write to every player's connection, so spread them over the worker threads
+            for (int from = 0; from < games.size(); from += START_SLICE) {
+                List<Game> slice = games.subList(from, Math.min(from + START_SLICE, games.size()));
+                scheduler.execute(() -> slice.forEach(Game::start));
+            }
+            if (games.isEmpty()) {
+                // Everyone left in the field had a bye
+                scheduleNextRound();
+            } else {
+                scheduler.schedule(() -> checkNoShows(roundNumber), config.tournamentNoShowSeconds, TimeUnit.SECONDS);
+            }
+        }
+        
+        // Score groups from the top; each entrant takes the highest-ranked opponent not yet played.
+        // An odd field gives the bye to the lowest-ranked entrant who has not had one.
+        private void pairSwiss(List<Entrant> field, List<Pairing> pairings, List<Entrant> byes) {
+            field.sort((a, b) -> a.points != b.points ? Integer.compare(b.points, a.points) : Integer.compare(a.seed, b.seed));
+            if (field.size() % 2 == 1) {
+                int bye = field.size() - 1;
+                for (int i = field.size() - 1; i >= 0; i--) {
+                    if (!field.get(i).hadBye) {
+                        bye = i;
+                        break;
+                    }
+                }
+                byes.add(field.remove(bye));
+            }
+            
+            boolean[] paired = new boolean[field.size()];
+            for (int i = 0; i < field.size(); i++) {
+                if (paired[i]) continue;
+                Entrant a = field.get(i);
+                int match = -1;
+                for (int j = i + 1; j < field.size(); j++) {
+                    if (!paired[j]) {
+                        if (!a.opponents.get(field.get(j).seed)) {
+                            match = j;
+                            break;
+                        }
+                        if (match < 0) {
+                            match = j; // Rematch only if every remaining opponent has been played
+                        }
+                    }
+                }
+                if (match < 0) continue;
+                paired[i] = true;
+                paired[match] = true;
+                pairings.add(colors(a, field.get(match)));
+            }
+        }
+        
+        // Circle method over every seed: seed 0 stays put and the rest rotate one place per round.
+        // Anyone drawn against an absent entrant, or the phantom of an odd field, has a bye.
+        private void pairRoundRobin(List<Pairing> pairings, List<Entrant> byes) {
+            int n = entrants.size() + entrants.size() % 2;
+            int r = round - 1;
+            for (int i = 0; i < n / 2; i++) {
+                Entrant a = circleSeat(i, r, n);
+                Entrant b = circleSeat(n - 1 - i, r, n);
+                boolean aIn = a != null && !a.out;
+                boolean bIn = b != null && !b.out;
+                if (aIn && bIn) {
+                    pairings.add(colors(a, b));
+                } else if (aIn) {
+                    byes.add(a);
+                } else if (bIn) {
+                    byes.add(b);
+                }
+            }
+        }
+        
+        private Entrant circleSeat(int position, int r, int n) {
+            int seed = position == 0 ? 0 : 1 + (position - 1 + r) % (n - 1);
+            return seed < entrants.size() ? entrants.get(seed) : null;
+        }
+        
+        // Reseeded every round: best remaining seed against the worst, and the best seed gets the bye
+        private void pairKnockout(List<Entrant> field, List<Pairing> pairings, List<Entrant> byes) {
+            field.sort(Comparator.comparingInt(e -> e.seed));
+            int lo = 0;
+            int hi = field.size() - 1;
+            if (field.size() % 2 == 1) {
+                byes.add(field.get(lo++));
+            }
+            while (lo < hi) {
+                pairings.add(colors(field.get(lo++), field.get(hi--)));
+            }
+        }
+        
+        // Whoever has played X less often gets it
+        private static Pairing colors(Entrant a, Entrant b) {
+            return b.gamesAsX < a.gamesAsX ? new Pairing(b, a, 0) : new Pairing(a, b, 0);
+        }
+        
+        // Caller holds the monitor; returns null if either player has gone or is still in another game
+        private Game open(Pairing pairing) {
+            if (!available(pairing.x) || !available(pairing.o)) {
+                return null;
+            }
+            Player x = activePlayers.get(pairing.x.playerId);
+            Player o = activePlayers.get(pairing.o.playerId);
+            cancelMatch(x);
+            cancelMatch(o);
+            pairing.x.gamesAsX++;
+            pairing.x.opponents.set(pairing.o.seed);
+            pairing.o.opponents.set(pairing.x.seed);
+            Game game = openGame(x, o, this);
+            liveGames.put(game, pairing);
+            return game;
+        }
+        
+        // Still connected or resumable, and not tied up in a game outside the tournament
+        private static boolean available(Entrant entrant) {
+            Player player = activePlayers.get(entrant.playerId);
+            return player != null && !inLiveGame(player);
+        }
+        
+        // Called by a tournament game once it is over, however it ended
+        public void gameFinished(Game game) {
+            Game replay = null;
+            Entrant eliminated = null;
+            boolean roundOver;
+            synchronized (this) {
+                Pairing pairing = liveGames.remove(game);
+                if (pairing == null || finished) {
+                    return;
+                }
+                
+                String winnerId = game.getWinner();
+                Entrant winner = winnerId == null ? null : winnerId.equals(pairing.x.playerId) ? pairing.x : pairing.o;
+                if (winner == null && format == Format.SINGLE_ELIMINATION) {
+                    if (pairing.replays < MAX_REPLAYS) {
+                        // Replay with colors swapped; the round waits for it
+                        Pairing again = new Pairing(pairing.o, pairing.x, pairing.replays + 1);
+                        replay = open(again);
+                        if (replay == null) {
+                            winner = available(pairing.x) ? pairing.x : pairing.o;
+                        }
+                    } else {
+                        winner = pairing.x.seed < pairing.o.seed ? pairing.x : pairing.o;
+                    }
+                }
+                
+                if (replay == null) {
+                    if (winner == null) {
+                        pairing.x.ties++;
+                        pairing.o.ties++;
+                        pairing.x.points += TIE_POINTS;
+                        pairing.o.points += TIE_POINTS;
+                    } else {
+                        Entrant loser = winner == pairing.x ? pairing.o : pairing.x;
+                        winner.wins++;
+                        winner.points += WIN_POINTS;
+                        loser.losses++;
+                        if (format == Format.SINGLE_ELIMINATION) {
+                            loser.out = true;
+                            eliminated = loser;
+                        }
+                    }
+                    changed.add(pairing.x);
+                    changed.add(pairing.o);
+                    pendingGames--;
+                }
+                roundOver = pendingGames == 0;
+            }
+            
+            if (replay != null) {
+                scheduler.execute(replay::start);
+            }
+            if (eliminated != null) {
+                sendTo(eliminated, "TOURNAMENT_ELIMINATED:" + id + ":" + round);
+            }
+            publishStandings();
+            if (roundOver) {
+                scheduleNextRound();
+            }
+        }
+        
+        private void scheduleNextRound() {
+            scheduler.schedule(this::nextRound, config.tournamentRoundBreakSeconds, TimeUnit.SECONDS);
+        }
+        
+        // Forfeit games where the player on turn has not moved for the no-show period, then check again later
+        private void checkNoShows(int roundNumber) {
+            List<Game> games;
+            synchronized (this) {
+                if (finished || round != roundNumber || liveGames.isEmpty()) {
+                    return;
+                }
+                games = new ArrayList<>(liveGames.keySet());
+            }
+            long cutoff = System.currentTimeMillis() - config.tournamentNoShowSeconds * 1000L;
+            for (Game game : games) {
+                game.forfeitIfIdle(cutoff);
+            }
+            scheduler.schedule(() -> checkNoShows(roundNumber), Math.max(1, config.tournamentNoShowSeconds / 2), 
+                               TimeUnit.SECONDS);
+        }
+        
+        // Caller holds the monitor
+        private void finish(List<Entrant> field) {
+            finished = true;
+            Entrant champion = null;
+            for (Entrant e : field.isEmpty() ? entrants : field) {
+                if (champion == null || e.points > champion.points 
+                        || (e.points == champion.points && e.seed < champion.seed)) {
+                    champion = e;
+                }
+            }
+            String result = "TOURNAMENT_OVER:" + id + ":" + (champion != null ? champion.name : "");
+            logger.info("Tournament " + name + " (" + id + ") finished after " + round + " rounds" + 
+                        (champion != null ? ", won by " + champion.name : ""));
+            for (Entrant e : entrants) {
+                Player player = activePlayers.get(e.playerId);
+                if (player != null) {
+                    if (player.getTournament() == this) {
+                        player.setTournament(null);
+                    }
+                    player.deliver(result);
+                }
+            }
+            tournaments.remove(key);
+        }
+        
+        // TOURNAMENT_STANDINGS:<id>:<version>:<entries>, entries being player_id:name:points:wins:losses:ties:out
+        private void publishStandings() {
+            String update;
+            synchronized (this) {
+                if (changed.isEmpty()) {
+                    return;
+                }
+                StringBuilder sb = new StringBuilder("TOURNAMENT_STANDINGS:").append(id).append(":")
+                    .append(++standingsVersion).append(":");
+                for (Entrant e : changed) {
+                    e.appendTo(sb);
+                }
+                changed.clear();
+                update = sb.toString();
+            }
+            broadcast(update);
+        }
+        
+        // Full table in the same format, for entrants who join late or lose track
+        public synchronized String getStandings() {
+            StringBuilder sb = new StringBuilder("TOURNAMENT_STANDINGS:").append(id).append(":")
+                .append(standingsVersion).append(":");
+            for (Entrant e : entrants) {
+                e.appendTo(sb);
+            }
+            return sb.toString();
+        }
+        
+        private void broadcast(String message) {
+            List<Entrant> everyone;
+            synchronized (this) {
+                everyone = new ArrayList<>(entrants);
+            }
+            for (Entrant e : everyone) {
+                sendTo(e, message);
+            }
+        }
+        
+        private void sendTo(Entrant entrant, String message) {
+            Player player = activePlayers.get(entrant.playerId);
+            if (player != null) {
+                player.deliver(message);
+            }
+        }
+        
+        private Entrant entrantOf(String playerId) {
+            for (Entrant e : entrants) {
+                if (e.playerId.equals(playerId)) {
+                    return e;
+                }
+            }
+            return null;
+        }
+    }
+    
+    // Hierarchical timing wheel driven by one thread: LEVELS wheels of WHEEL_SIZE slots, each level's slot
+    // spanning a whole turn of the level below. Scheduling and cancelling only queue the timeout for the
+    // wheel thread, and a timeout is moved down a level at most LEVELS - 1 times before it fires, so every
+    // operation is O(1) however many timeouts are pending. Expired tasks run on the given executor. The hand-off
+    // queues are stacks linked through the timeouts themselves, so cancelling allocates nothing.
+    private static final class TimerWheel implements Runnable {
+        private static final int WHEEL_BITS = 6;
+        private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+        private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+        private static final int LEVELS = 4; // With 10ms ticks: 640ms, 41s, 44min and 47h per turn
+        
+        private final long tickNanos;
+        private final Executor executor;
+        private final long origin = System.nanoTime();
+        private final Timeout[][] slots = new Timeout[LEVELS][WHEEL_SIZE]; // Heads of doubly linked lists
+        private final AtomicReference<Timeout> added = new AtomicReference<>(); // Linked by nextAdded
+        private final AtomicReference<Timeout> cancelled = new AtomicReference<>(); // Linked by nextCancelled
+        private long tick = 0; // Wheel thread only
+        
+        public static final class Timeout {
+            private static final int PENDING = 0;
+            private static final int CANCELLED = 1;
+            private static final int EXPIRED = 2;
+            
+            private final TimerWheel wheel;
+            private final long deadline; // In ticks
+            private final Runnable task;
+            private final AtomicInteger state = new AtomicInteger(PENDING);
+            private Timeout prev;
+            private Timeout next;
+            private Timeout nextAdded;
+            private Timeout nextCancelled;
+            private int level = -1; // -1 until placed on a wheel
+            private int slot;
+            
+            private Timeout(TimerWheel wheel, long deadline, Runnable task) {
+                this.wheel = wheel;
+                this.deadline = deadline;
+                this.task = task;
+            }
+            
+            // Returns false if the task already ran or was cancelled before
+            public boolean cancel() {
+                if (!state.compareAndSet(PENDING, CANCELLED)) {
+                    return false;
+                }
+                Timeout head;
+                do {
+                    head = wheel.cancelled.get();
+                    nextCancelled = head;
+                } while (!wheel.cancelled.compareAndSet(head, this));
+                return true;
+            }
+            
+            // True once the task has been handed to the executor
+            public boolean isExpired() {
+                return state.get() == EXPIRED;
+            }
+        }
+        
+        public TimerWheel(long tickMs, Executor executor) {
+            this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+            this.executor = executor;
+        }
+        
+        public void start() {
+            Thread thread = new Thread(this, "timer-wheel");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        public Timeout schedule(long delayMs, Runnable task) {
+            long deadline = (System.nanoTime() - origin + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)) 
+                             + tickNanos - 1) / tickNanos;
+            Timeout timeout = new Timeout(this, deadline, task);
+            Timeout head;
+            do {
+                head = added.get();
+                timeout.nextAdded = head;
+            } while (!added.compareAndSet(head, timeout));
+            return timeout;
+        }
+        
+        @Override
+        public void run() {
+            while (true) {
+                long wait = origin + (tick + 1) * tickNanos - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                    continue;
+                }
+                tick++;
+                
+                for (Timeout timeout = cancelled.getAndSet(null); timeout != null; ) {
+                    Timeout next = timeout.nextCancelled;
+                    timeout.nextCancelled = null;
+                    unlink(timeout);
+                    timeout = next;
+                }
+                for (Timeout timeout = added.getAndSet(null); timeout != null; ) {
+                    Timeout next = timeout.nextAdded;
+                    timeout.nextAdded = null;
+                    if (timeout.state.get() == Timeout.PENDING) {
+                        place(timeout);
+                    }
+                    timeout = next;
+                }
+                
+                // Once a level completes a turn, spread the next slot of the level above over the levels below,
+                // highest first so nothing lands in a slot that was already cascaded this tick
+                int top = 0;
+                while (top + 1 < LEVELS && (tick & ((1L << (WHEEL_BITS * (top + 1))) - 1)) == 0) {
+                    top++;
+                }
+                for (int level = top; level >= 1; level--) {
+                    Timeout list = detach(level, (int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+                    while (list != null) {
+                        Timeout next = list.next;
+                        if (list.state.get() == Timeout.PENDING) {
+                            place(list);
+                        }
+                        list = next;
+                    }
+                }
+                
+                Timeout due = detach(0, (int) tick & WHEEL_MASK);
+                while (due != null) {
+                    Timeout next = due.next;
+                    if (due.deadline > tick) {
+                        place(due); // Parked in the farthest slot because it was beyond the top level's reach
+                    } else if (due.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                        executor.execute(due.task);
+                    }
+                    due = next;
+                }
+            }
+        }
+        
+        // The lowest level whose slot for the deadline is still ahead of the current tick on that level
+        private void place(Timeout timeout) {
+            long deadline = Math.max(timeout.deadline, tick);
+            int level = 0;
+            while (level < LEVELS - 1 && (deadline >>> (WHEEL_BITS * level)) - (tick >>> (WHEEL_BITS * level)) >= WHEEL_SIZE) {
+                level++;
+            }
+            long index = deadline >>> (WHEEL_BITS * level);
+            if (index - (tick >>> (WHEEL_BITS * level)) >= WHEEL_SIZE) {
+                index = (tick >>> (WHEEL_BITS * level)) + WHEEL_MASK; // Beyond the top level: wait in its last slot
+            }
+            int slot = (int) index & WHEEL_MASK;
+            
+            timeout.level = level;
+            timeout.slot = slot;
+            timeout.prev = null;
+            timeout.next = slots[level][slot];
+            if (timeout.next != null) {
+                timeout.next.prev = timeout;
+            }
+            slots[level][slot] = timeout;
+        }
+        
+        private void unlink(Timeout timeout) {
+            if (timeout.level < 0) {
+                return; // Still in the added queue, where its state keeps it from being placed
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                slots[timeout.level][timeout.slot] = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.level = -1;
+        }
+        
+        private Timeout detach(int level, int slot) {
+            Timeout list = slots[level][slot];
+            slots[level][slot] = null;
+            for (Timeout t = list; t != null; t = t.next) {
+                t.level = -1;
+            }
+            return list;
+        }
+    }
+    
+    // Load-aware admission. Every SAMPLE_MS it reads scheduler lag (how late its own periodic sample runs),
+    // outbound backlog, the share of time spent in GC and process CPU. The worst of them relative to its
+    // configured limit sets the pressure, and each level sheds more: degraded chat from 1x the limit,
+    // paused matchmaking from 1.5x, and new connections turned away with a retry hint from 2x. Pressure
+    // rises after HEAT_UP_SAMPLES over-limit samples in a row, to the lowest level all of them reached, so
+    // a single spike (such as full CPU while the JIT warms up) does not shed load. It falls one level at a
+    // time, after COOL_DOWN_SAMPLES calm samples in a row.
+    private static final class AdmissionController {
+        private static final long SAMPLE_MS = 250;
+        private static final int HEAT_UP_SAMPLES = 4;
+        private static final int COOL_DOWN_SAMPLES = 8;
+        
+        enum Pressure { NORMAL, DEGRADE_CHAT, PAUSE_MATCHMAKING, SHED_CONNECTIONS }
+        
+        private final ThreadPoolExecutor refusals = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1024), r -> {
+                Thread t = new Thread(r, "refusals");
+                t.setDaemon(true);
+                return t;
+            });
+        private final AtomicInteger refused = new AtomicInteger(0);
+        private volatile Pressure pressure = Pressure.NORMAL;
+        
+        // Sampler state, scheduler thread only
+        private long expectedAt;
+        private long lastSampleAt;
+        private long lastGcMs;
+        private int hotSamples = 0;
+        private Pressure hotTarget;
+        private int calmSamples = 0;
+        
+        // Last readings, for the stats log
+        private volatile long lagMs;
+        private volatile int backlog;
+        private volatile int gcPercent;
+        private volatile int cpuPercent;
+        
+        public void start() {
+            lastGcMs = gcMillis();
+            lastSampleAt = System.nanoTime();
+            scheduleSample();
+        }
+        
+        // Each sample books the next, so the lag it measures is its own delay in the scheduler queue
+        private void scheduleSample() {
+            expectedAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SAMPLE_MS);
+            scheduler.schedule(this::sample, SAMPLE_MS, TimeUnit.MILLISECONDS);
+        }
+        
+        public boolean isChatDegraded() {
+            return pressure.compareTo(Pressure.DEGRADE_CHAT) >= 0;
+        }
+        
+        public boolean isMatchmakingPaused() {
+            return pressure.compareTo(Pressure.PAUSE_MATCHMAKING) >= 0;
+        }
+        
+        // Reserve a connection slot; returns null if admitted, otherwise the line to send before closing
+        public String admit() {
+            if (pressure == Pressure.SHED_CONNECTIONS) {
+                refused.incrementAndGet();
+                return "RETRY_AFTER:" + config.admissionRetryAfterSeconds + ":Server is busy";
+            }
+            while (true) {
+                int current = currentConnections.get();
+                if (current >= config.maxClients) {
+                    refused.incrementAndGet();
+                    return "RETRY_AFTER:" + config.admissionRetryAfterSeconds + ":Server is full";
+                }
+                if (currentConnections.compareAndSet(current, current + 1)) {
+                    return null;
+                }
+            }
+        }
+        
+        // Answer and close a turned away socket on the refusals thread; if that backs up, just close it
+        public void refuse(Socket socket, String line) {
+            try {
+                refusals.execute(() -> {
+                    try (Socket s = socket) {
+                        s.getOutputStream().write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        // The client gave up first
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // Nothing left to do
+                }
+            }
+        }
+        
+        public String describe() {
+            return pressure + " (scheduler lag " + lagMs + "ms, backlog " + backlog + ", GC " + gcPercent + 
+                   "%, CPU " + cpuPercent + "%, " + refused.get() + " connections turned away)";
+        }
+        
+        private void sample() {
+            try {
+                measure();
+            } catch (RuntimeException e) {
+                logger.warning("Error sampling load: " + e.getMessage());
+            } finally {
+                scheduleSample();
+            }
+        }
+        
+        private void measure() {
+            long now = System.nanoTime();
+            lagMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(now - expectedAt));
+            
+            long gcMs = gcMillis();
+            long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - lastSampleAt));
+            gcPercent = (int) Math.min(100, (gcMs - lastGcMs) * 100 / elapsedMs);
+            lastGcMs = gcMs;
+            lastSampleAt = now;
+            
+            java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                cpuPercent = (int) Math.max(0, ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad() * 100);
+            }
+            
+            int queued = cluster == null ? 0 : cluster.backlog();
+            for (GameLobby lobby : lobbies.values()) {
+                queued += lobby.getPendingChat();
+            }
+            backlog = queued;
+            
+            double load = Math.max(Math.max((double) lagMs / config.admissionLagMs, (double) backlog / config.admissionBacklog),
+                                   Math.max((double) gcPercent / config.admissionGcPercent, (double) cpuPercent / config.admissionCpuPercent));
+            Pressure target = load >= 2 ? Pressure.SHED_CONNECTIONS
+                            : load >= 1.5 ? Pressure.PAUSE_MATCHMAKING
+                            : load >= 1 ? Pressure.DEGRADE_CHAT : Pressure.NORMAL;
+            
+            if (target.compareTo(pressure) > 0) {
+                calmSamples = 0;
+                hotTarget = hotSamples == 0 || target.compareTo(hotTarget) < 0 ? target : hotTarget;
+                if (++hotSamples >= HEAT_UP_SAMPLES) {
+                    hotSamples = 0;
+                    change(hotTarget);
+                }
+                return;
+            }
+            hotSamples = 0;
+            if (target.compareTo(pressure) < 0 && ++calmSamples >= COOL_DOWN_SAMPLES) {
+                calmSamples = 0;
+                change(Pressure.values()[pressure.ordinal() - 1]);
+            } else if (target == pressure) {
+                calmSamples = 0;
+            }
+        }
+        
+        private void change(Pressure next) {
+            Pressure previous = pressure;
+            pressure = next;
+            String message = "Load pressure " + previous + " -> " + describe();
+            if (next.compareTo(previous) > 0) {
+                logger.warning(message);
+            } else {
+                logger.info(message);
+            }
+            if (previous.compareTo(Pressure.PAUSE_MATCHMAKING) >= 0 && next.compareTo(Pressure.PAUSE_MATCHMAKING) < 0) {
+                resumeMatchmaking();
+            }
+        }
+        
+        private static long gcMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += Math.max(gc.getCollectionTime(), 0);
+            }
+            return total;
+        }
+    }
+    
+    // Binary record of inbound traffic for replay. After a header (MAGIC, wall-clock start in ms) each record
+    // is a kind byte, the nanoseconds since the previous record and the connection id as varints, and for
+    // COMMAND and ISSUED records the UTF-8 text behind a varint length. ISSUED records carry "<owner> <value>"
+    // for each id and token the server handed out (see issue), so a replay can map them to its own.
+    // Session tokens are secrets, so they are only ever written as digests, and the file is owner-only.
+    private static final class CommandJournal {
+        static final int MAGIC = 0x54544A32; // "TTJ2"
+        static final int OPEN = 1;
+        static final int COMMAND = 2;
+        static final int CLOSE = 3;
+        static final int ISSUED = 4;
+        
+        private final DataOutputStream out;
+        private long lastNanos = System.nanoTime();
+        private boolean failed = false;
+        
+        public CommandJournal(String file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(createPrivateFile(file)), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeLong(System.currentTimeMillis());
+        }
+        
+        public void open(int connection) {
+            append(OPEN, connection, null);
+        }
+        
+        public void command(int connection, String line) {
+            if (line.startsWith("RESUME:")) {
+                line = "RESUME:" + redact(line.substring(7).trim());
+            }
+            append(COMMAND, connection, line);
+        }
+        
+        public void close(int connection) {
+            append(CLOSE, connection, null);
+        }
+        
+        public void issued(String owner, String value) {
+            append(ISSUED, 0, owner + " " + (owner.startsWith("token:") ? redact(value) : value));
+        }
+        
+        // Replay only has to recognise a token when it comes back, so a digest of token length stands in for it
+        static String redact(String token) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 18));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+        
+        private synchronized void append(int kind, int connection, String text) {
+            if (failed) {
+                return;
+            }
+            try {
+                long now = System.nanoTime();
+                out.writeByte(kind);
+                writeVarLong(out, now - lastNanos);
+                writeVarLong(out, connection);
+                lastNanos = now;
+                if (text != null) {
+                    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                    writeVarLong(out, bytes.length);
+                    out.write(bytes);
+                }
+            } catch (IOException e) {
+                // Serving clients matters more than the recording, so stop recording rather than fail commands
+                failed = true;
+                logger.severe("Command journal stopped: " + e.getMessage());
+            }
+        }
+        
+        public synchronized void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                logger.warning("Error flushing command journal: " + e.getMessage());
+            }
+        }
+        
+        public synchronized void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warning("Error closing command journal: " + e.getMessage());
+            }
+        }
+        
+        static void writeVarLong(DataOutput out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+        
+        static long readVarLong(DataInput in) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in journal");
+        }
+    }
+    
+    // Feeds a journal back through ClientHandler and Game on one thread, as fast as it will go, with the
+    // connections' output counted and dropped. Ids and tokens issued by this run differ from the recorded
+    // ones, so each recorded ISSUED value is paired with the value issued here for the same owner, and
+    // command arguments are rewritten to match. Owners name connections and ids in recorded terms once
+    // mapped back, so values issued off the replay thread pair up however their timing differs. Work the
+    // server defers to the scheduler (chat flushes, tournament rounds, clocks) still runs in the
+    // background and is not part of the timed path.
+    private static final class JournalReplay {
+        private final Map<String, Deque<String>> recordedIssued = new HashMap<>(); // By owner, in issue order
+        private final Queue<String[]> replayIssued = new ConcurrentLinkedQueue<>(); // {owner, value} issued here
+        private final List<String[]> unpaired = new ArrayList<>(); // Issued here, recorded match not known yet
+        private boolean pairingChanged = false; // Something arrived that may pair an unpaired value
+        private final Map<String, String> translation = new HashMap<>(); // Recorded value -> value issued here
+        private final Map<String, String> recordedFor = new HashMap<>(); // Value or connection here -> recorded
+        private int shortestIssued = Integer.MAX_VALUE;
+        private int longestIssued = 0;
+        private final Map<Integer, ClientHandler> handlers = new HashMap<>();
+        private final LongAdder linesOut = new LongAdder();
+        
+        // Returns false if the move path went over --max-alloc-per-move
+        public static boolean run(String file) throws IOException {
+            JournalReplay r = new JournalReplay();
+            replay = r;
+            startServices();
+            
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+                if (in.readInt() != CommandJournal.MAGIC) {
+                    throw new IOException(file + " is not a command journal");
+                }
+                long recordedAt = in.readLong();
+                return r.replay(in, file, recordedAt);
+            }
+        }
+        
+        // Called from whichever thread issues the value
+        void issued(String owner, String value) {
+            replayIssued.add(new String[]{owner, value});
+        }
+        
+        private boolean replay(DataInputStream in, String file, long recordedAt) throws IOException {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+                                                         ? (com.sun.management.ThreadMXBean) threads : null;
+            long thread = Thread.currentThread().getId();
+            long[] gcBefore = gcTotals();
+            long allocatedBefore = allocation != null ? allocation.getThreadAllocatedBytes(thread) : 0;
+            long started = System.nanoTime();
+            
+            long recordedNanos = 0;
+            int commands = 0;
+            int moves = 0;
+            long moveAllocated = 0; // Allocated inside handleLine for MOVE commands only, not decoding or translating
+            int connections = 0;
+            boolean truncated = false;
+            while (true) {
+                int kind = in.read();
+                if (kind < 0) {
+                    break;
+                }
+                int connection;
+                String text = null;
+                try {
+                    recordedNanos += CommandJournal.readVarLong(in);
+                    connection = (int) CommandJournal.readVarLong(in);
+                    if (kind == CommandJournal.COMMAND || kind == CommandJournal.ISSUED) {
+                        byte[] bytes = new byte[(int) CommandJournal.readVarLong(in)];
+                        in.readFully(bytes);
+                        text = new String(bytes, StandardCharsets.UTF_8);
+                    }
+                } catch (EOFException e) {
+                    // The server stopped mid-record; everything before it is still good
+                    truncated = true;
+                    break;
+                }
+                
+                switch (kind) {
+                    case CommandJournal.ISSUED: {
+                        int space = text.indexOf(' ');
+                        String value = text.substring(space + 1);
+                        recordedIssued.computeIfAbsent(normalizeOwner(text.substring(0, space).split(":")), 
+                                                       o -> new ArrayDeque<>()).add(value);
+                        shortestIssued = Math.min(shortestIssued, value.length());
+                        longestIssued = Math.max(longestIssued, value.length());
+                        pairingChanged = true;
+                        break;
+                    }
+                    case CommandJournal.OPEN: {
+                        ClientHandler handler = new ClientHandler(new SinkTransport(linesOut));
+                        recordedFor.put("c" + handler.connectionId, "c" + connection);
+                        pairingChanged = true;
+                        currentConnections.incrementAndGet();
+                        handlers.put(connection, handler);
+                        handler.welcome();
+                        connections++;
+                        break;
+                    }
+                    case CommandJournal.COMMAND: {
+                        ClientHandler handler = handlers.get(connection);
+                        if (handler != null) {
+                            String line = translate(text);
+                            if (allocation != null && line.startsWith("MOVE:")) {
+                                long before = allocation.getThreadAllocatedBytes(thread);
+                                handler.handleLine(line);
+                                moveAllocated += allocation.getThreadAllocatedBytes(thread) - before;
+                                moves++;
+                            } else {
+                                handler.handleLine(line);
+                            }
+                            commands++;
+                        }
+                        break;
+                    }
+                    case CommandJournal.CLOSE: {
+                        ClientHandler handler = handlers.remove(connection);
+                        if (handler != null) {
+                            handler.connectionLost();
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unknown record kind " + kind + " in " + file);
+                }
+            }
+            for (ClientHandler handler : handlers.values()) {
+                handler.connectionLost();
+            }
+            handlers.clear();
+            
+            long elapsedNanos = System.nanoTime() - started;
+            long allocated = allocation != null ? allocation.getThreadAllocatedBytes(thread) - allocatedBefore : -1;
+            long[] gcAfter = gcTotals();
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            
+            System.out.println("Replayed " + file + " (recorded " + new Date(recordedAt) + (truncated ? ", truncated" : "") + ")");
+            System.out.printf("  %d commands on %d connections in %.1f ms: %.0f commands/s (recorded over %.1f s)%n",
+                              commands, connections, elapsedNanos / 1e6, commands / seconds, recordedNanos / 1e9);
+            System.out.println("  " + linesOut.sum() + " lines sent to clients");
+            if (allocated >= 0) {
+                System.out.printf("  %d bytes allocated on the replay thread, %d per command%n",
+                                  allocated, commands == 0 ? 0 : allocated / commands);
+                System.out.printf("  %d moves, %d bytes allocated handling them, %.1f per move%n",
+                                  moves, moveAllocated, moves == 0 ? 0.0 : (double) moveAllocated / moves);
+            }
+            System.out.println("  GC: " + (gcAfter[0] - gcBefore[0]) + " collections, " + (gcAfter[1] - gcBefore[1]) + " ms");
+            
+            int budget = config.maxAllocPerMove;
+            if (budget < 0) {
+                return true;
+            }
+            if (allocation == null || moves == 0) {
+                System.out.println("FAIL: --max-alloc-per-move needs allocation counters and a journal with moves");
+                return false;
+            }
+            if (moveAllocated > (long) budget * moves) {
+                System.out.printf("FAIL: move path allocated %.1f bytes per move, budget is %d%n",
+                                  (double) moveAllocated / moves, budget);
+                return false;
+            }
+            System.out.println("  Within the budget of " + budget + " bytes per move");
+            return true;
+        }
+        
+        // Pair values issued here with recorded ones for the same owner. An owner naming a value that is not
+        // paired yet waits, so passes repeat until nothing more pairs.
+        private void pairIssued() {
+            String[] issued;
+            while ((issued = replayIssued.poll()) != null) {
+                unpaired.add(issued);
+                pairingChanged = true;
+            }
+            while (pairingChanged) {
+                pairingChanged = false;
+                for (Iterator<String[]> it = unpaired.iterator(); it.hasNext(); ) {
+                    String[] entry = it.next();
+                    String owner = recordedOwner(entry[0]);
+                    Deque<String> candidates = owner != null ? recordedIssued.get(owner) : null;
+                    String recorded = candidates != null ? candidates.poll() : null;
+                    if (recorded != null) {
+                        it.remove();
+                        translation.put(recorded, entry[1]);
+                        recordedFor.put(entry[1], recorded);
+                        pairingChanged = true;
+                    }
+                }
+            }
+        }
+        
+        // The owner as the recording wrote it, or null while one of the values it names is unpaired
+        private String recordedOwner(String owner) {
+            String[] parts = owner.split(":");
+            for (int i = 1; i < parts.length; i++) {
+                parts[i] = recordedFor.get(parts[i]);
+                if (parts[i] == null) {
+                    return null;
+                }
+            }
+            return normalizeOwner(parts);
+        }
+        
+        // Argument order carries no meaning (X and O of a game), so owners compare with it sorted
+        private static String normalizeOwner(String[] parts) {
+            Arrays.sort(parts, 1, parts.length);
+            return String.join(":", parts);
+        }
+        
+        // Swap recorded ids and tokens in the command's arguments for the ones issued by this run
+        private String translate(String line) {
+            if (pairingChanged || !replayIssued.isEmpty()) {
+                pairIssued();
+            }
+            
+            // Only arguments as long as an id or a token can need rewriting, so most commands are left untouched
+            StringBuilder rewritten = null;
+            int start = line.indexOf(':') + 1;
+            int copied = 0;
+            while (start > 0) {
+                int end = line.indexOf(':', start);
+                if (end < 0) {
+                    end = line.length();
+                }
+                int length = end - start;
+                if (length >= shortestIssued && length <= longestIssued) {
+                    String mapped = translation.get(line.substring(start, end));
+                    if (mapped != null) {
+                        if (rewritten == null) {
+                            rewritten = new StringBuilder(line.length() + 16);
+                        }
+                        rewritten.append(line, copied, start).append(mapped);
+                        copied = end;
+                    }
+                }
+                start = end < line.length() ? end + 1 : 0;
+            }
+            if (rewritten == null) {
+                return line;
+            }
+            return rewritten.append(line, copied, line.length()).toString();
+        }
+        
+        private static long[] gcTotals() {
+            long[] totals = new long[2];
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                totals[0] += Math.max(gc.getCollectionCount(), 0);
+                totals[1] += Math.max(gc.getCollectionTime(), 0);
+            }
+            return totals;
+        }
+    }
+    
+    // Connection end for replayed clients: lines are counted and dropped, and nothing ever arrives
+    private static final class SinkTransport implements Transport {
+        private final LongAdder sent;
+        
+        public SinkTransport(LongAdder sent) {
+            this.sent = sent;
+        }
+        
+        @Override
+        public String receive() {
+            return null;
+        }
+        
+        @Override
+        public void send(String line) {
+            sent.increment();
+        }
+        
+        @Override
+        public void send(CharSequence line) {
+            sent.increment();
+        }
+        
+        @Override
+        public String getRemoteAddress() {
+            return "replay";
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    // Snowflake-style 64-bit ids: milliseconds since EPOCH_MS in the top 41 bits, the cluster node in the
+    // next 10, the process generation in the next 4 and a per-millisecond sequence in the low 8, so nodes
+    // never collide and need no coordination.
+    // On the wire an id is written in base 62, at most 11 characters.
+    private static final class IdAllocator {
+        private static final long EPOCH_MS = 1672531200000L; // 2023-01-01T00:00:00Z
+        private static final int NODE_BITS = 10;
+        static final int GENERATION_BITS = 4;
+        private static final int SEQUENCE_BITS = 8;
+        private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+        private static final char[] DIGITS = 
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+        
+        private final long nodeBits; // Node, then the process generation, shifted into place
+        private long lastMs = -1;
+        private long sequence = 0;
+        
+        // Processes overlapping on one node during a restart use different generations, so ids they
+        // issue in the same millisecond still differ
+        public IdAllocator(int node, int generation) {
+            if (node < 0 || node >= (1 << NODE_BITS)) {
+                throw new IllegalArgumentException("Node number out of range: " + node);
+            }
+            this.nodeBits = (((long) node << GENERATION_BITS) | (generation & ((1 << GENERATION_BITS) - 1))) << SEQUENCE_BITS;
+        }
+        
+        public synchronized long next() {
+            // A clock that steps backwards keeps issuing from the last millisecond seen
+            long now = Math.max(System.currentTimeMillis() - EPOCH_MS, lastMs);
+            if (now == lastMs) {
+                sequence = (sequence + 1) & SEQUENCE_MASK;
+                if (sequence == 0) {
+                    // 256 ids in one millisecond: wait for the next one
+                    while (now <= lastMs) {
+                        Thread.onSpinWait();
+                        now = System.currentTimeMillis() - EPOCH_MS;
+                    }
+                }
+            } else {
+                sequence = 0;
+            }
+            lastMs = now;
+            return (now << (NODE_BITS + GENERATION_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+        }
+        
+        public String nextWire() {
+            return format(next());
+        }
+        
+        public static String format(long id) {
+            char[] buf = new char[11];
+            int i = buf.length;
+            do {
+                buf[--i] = DIGITS[(int) (id % 62)];
+                id /= 62;
+            } while (id > 0);
+            return new String(buf, i, buf.length - i);
+        }
+        
+        // Numeric id for a wire id, or -1 if the string is not one of ours
+        public static long parse(String wire) {
+            if (wire == null || wire.isEmpty() || wire.length() > 11) {
+                return -1;
+            }
+            long id = 0;
+            for (int i = 0; i < wire.length(); i++) {
+                char c = wire.charAt(i);
+                int digit = c >= '0' && c <= '9' ? c - '0'
+                          : c >= 'A' && c <= 'Z' ? c - 'A' + 10
+                          : c >= 'a' && c <= 'z' ? c - 'a' + 36 : -1;
+                if (digit < 0 || id > (Long.MAX_VALUE - digit) / 62) {
+                    return -1;
+                }
+                id = id * 62 + digit;
+            }
+            return id;
+        }
+    }
+    
+    // Local players by compact int handle. A handle is a slot index tagged with the slot's generation, so
+    // resolving one is a single array read plus a compare, and a handle kept past a player's departure
+    // resolves to null instead of to whoever reuses the slot. Lookups by id go through an open-addressing
+    // index keyed by the numeric id itself.
+    private static class PlayerRegistry {
+        private static final int INDEX_BITS = 20;
+        private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+        private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+        
+        private volatile AtomicReferenceArray<Player> slots = new AtomicReferenceArray<>(64);
+        private int[] generations = new int[64];
+        private int[] freeSlots = new int[16];
+        private int freeCount = 0;
+        private int slotsUsed = 0;
+        private volatile int size = 0;
+        
+        // id -> handle + 1 (0 marks an empty bucket), linear probing, at most half full.
+        // Writers hold the write lock; readers go optimistic and retry under the read lock on a race.
+        private final StampedLock lock = new StampedLock();
+        private volatile long[] keys = new long[128];
+        private volatile int[] values = new int[128];
+        
+        public Player get(int handle) {
+            AtomicReferenceArray<Player> s = slots;
+            int index = handle & INDEX_MASK;
+            if (handle < 0 || index >= s.length()) {
+                return null;
+            }
+            Player player = s.get(index);
+            return player != null && player.getHandle() == handle ? player : null;
+        }
+        
+        public Player get(String playerId) {
+            return get(IdAllocator.parse(playerId));
+        }
+        
+        public Player get(long id) {
+            if (id < 0) {
+                return null;
+            }
+            long stamp = lock.tryOptimisticRead();
+            Player player = find(id);
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    player = find(id);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return player;
+        }
+        
+        // Handle for a local player id, or -1
+        public int handleOf(String playerId) {
+            Player player = get(playerId);
+            return player != null ? player.getHandle() : -1;
+        }
+        
+        public boolean containsKey(String playerId) {
+            return get(playerId) != null;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        // Point-in-time copy of every registered player
+        public List<Player> values() {
+            AtomicReferenceArray<Player> s = slots;
+            List<Player> all = new ArrayList<>(size);
+            for (int i = 0; i < s.length(); i++) {
+                Player player = s.get(i);
+                if (player != null) {
+                    all.add(player);
+                }
+            }
+            return all;
+        }
+        
+        // Register a player under its id, replacing any earlier player with the same id
+        public void put(String playerId, Player player) {
+            long id = IdAllocator.parse(playerId);
+            if (id < 0) {
+                throw new IllegalArgumentException("Not a player id: " + playerId);
+            }
+            long stamp = lock.writeLock();
+            try {
+                int existing = bucketOf(id);
+                if (existing >= 0) {
+                    releaseSlot(values[existing] - 1);
+                    removeBucket(existing);
+                }
+                
+                int index = freeCount > 0 ? freeSlots[--freeCount] : slotsUsed++;
+                if (index > INDEX_MASK) {
+                    slotsUsed--;
+                    throw new IllegalStateException("Player registry is full");
+                }
+                if (index >= slots.length()) {
+                    growSlots();
+                }
+                int handle = ((generations[index] & GENERATION_MASK) << INDEX_BITS) | index;
+                player.setHandle(handle);
+                slots.set(index, player);
+                
+                if ((size + 1) * 2 > keys.length) {
+                    growIndex();
+                }
+                insertBucket(id, handle);
+                size++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        
+        public Player remove(String playerId) {
+            long id = IdAllocator.parse(playerId);
+            long stamp = lock.writeLock();
+            try {
+                int bucket = id < 0 ? -1 : bucketOf(id);
+                if (bucket < 0) {
+                    return null;
+                }
+                int handle = values[bucket] - 1;
+                Player player = slots.get(handle & INDEX_MASK);
+                releaseSlot(handle);
+                removeBucket(bucket);
+                return player;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        
+        private Player find(long id) {
+            long[] k = keys;
+            int[] v = values;
+            if (k.length != v.length) {
+                return null; // Caught mid-resize; the lock validation will send us round again
+            }
+            int mask = k.length - 1;
+            for (int i = home(id, mask), probes = 0; v[i] != 0 && probes < k.length; i = (i + 1) & mask, probes++) {
+                if (k[i] == id) {
+                    return get(v[i] - 1);
+                }
+            }
+            return null;
+        }
         
-        public Player(String id, String name, ClientHandler clientHandler) {
-            this.id = id;
-            this.name = name;
-            this.clientHandler = clientHandler;
-            this.lastActivity = new Timestamp(System.currentTimeMillis());
-            this.currentLobbyId = lobbies.values().iterator().next().getId(); // Join default lobby
+        // Caller holds the write lock
+        private int bucketOf(long id) {
+            int mask = keys.length - 1;
+            for (int i = home(id, mask); values[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
         }
         
-        public String getId() {
-            return id;
+        private void insertBucket(long id, int handle) {
+            int mask = keys.length - 1;
+            int i = home(id, mask);
+            while (values[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = id;
+            values[i] = handle + 1;
         }
         
-        public String getName() {
-            return name;
+        // Backward-shift delete, so probe chains never need tombstones
+        private void removeBucket(int hole) {
+            int mask = keys.length - 1;
+            int i = hole;
+            while (true) {
+                i = (i + 1) & mask;
+                if (values[i] == 0) {
+                    break;
+                }
+                int home = home(keys[i], mask);
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    values[hole] = values[i];
+                    hole = i;
+                }
+            }
+            keys[hole] = 0;
+            values[hole] = 0;
+            size--;
         }
         
-        public void setName(String name) {
-            this.name = name;
+        private void releaseSlot(int handle) {
+            int index = handle & INDEX_MASK;
+            slots.set(index, null);
+            generations[index]++;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = index;
         }
         
-        public ClientHandler getClientHandler() {
-            return clientHandler;
+        private void growSlots() {
+            AtomicReferenceArray<Player> old = slots;
+            AtomicReferenceArray<Player> grown = new AtomicReferenceArray<>(old.length() * 2);
+            for (int i = 0; i < old.length(); i++) {
+                grown.set(i, old.get(i));
+            }
+            generations = Arrays.copyOf(generations, grown.length());
+            slots = grown;
         }
         
-        public int getRating() {
-            return rating;
+        private void growIndex() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            int[] newValues = new int[oldValues.length * 2];
+            int mask = newKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldValues[j] != 0) {
+                    int i = home(oldKeys[j], mask);
+                    while (newValues[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    newKeys[i] = oldKeys[j];
+                    newValues[i] = oldValues[j];
+                }
+            }
+            keys = newKeys;
+            values = newValues;
         }
         
-        public void updateRating(int change) {
-            this.rating += change;
+        // Snowflake ids differ mostly in their timestamp bits, so mix before masking down to a bucket
+        private static int home(long id, int mask) {
+            return (int) HashRing.mix(id) & mask;
         }
+    }
+    
+    // Consistent-hash ring over the cluster's nodes. Each node places VIRTUAL_NODES points on the ring and
+    // owns the arcs ending at them, so adding or removing a node only moves the keys on that node's arcs.
+    private static class HashRing {
+        private static final int VIRTUAL_NODES = 100;
         
-        public void incrementWins() {
-            wins++;
+        private final long[] points;
+        private final int[] owners;
+        
+        public HashRing(int nodeCount) {
+            int n = nodeCount * VIRTUAL_NODES;
+            long[] raw = new long[n];
+            Integer[] order = new Integer[n];
+            for (int node = 0; node < nodeCount; node++) {
+                for (int v = 0; v < VIRTUAL_NODES; v++) {
+                    int i = node * VIRTUAL_NODES + v;
+                    raw[i] = mix(((long) node << 32) | v);
+                    order[i] = i;
+                }
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(raw[a], raw[b]));
+            
+            points = new long[n];
+            owners = new int[n];
+            for (int i = 0; i < n; i++) {
+                points[i] = raw[order[i]];
+                owners[i] = order[i] / VIRTUAL_NODES;
+            }
         }
         
-        public void incrementLosses() {
-            losses++;
+        // Node owning the first point at or after the key, wrapping past the end
+        public int owner(long key) {
+            int i = Arrays.binarySearch(points, mix(key));
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return owners[i == points.length ? 0 : i];
         }
         
-        public void incrementTies() {
-            ties++;
+        // splitmix64 finalizer, to spread small or clustered keys around the whole ring
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
         }
+    }
+    
+    // Inter-node message bus over TCP. Each node listens on its own entry in the node list and keeps one
+    // outbound link per peer, written by a dedicated thread so game threads never block on the network.
+    // A link starts with "HELLO <cluster secret>"; the listener drops links that do not.
+    private static class ClusterBus {
+        private static final int CONNECT_TIMEOUT_MS = 3000;
         
-        public int getWins() {
-            return wins;
+        private final int self;
+        private final String[] nodes;
+        private final Transport[] links;
+        private final ThreadPoolExecutor[] senders;
+        
+        public ClusterBus(int self, String[] nodes) {
+            this.self = self;
+            this.nodes = nodes;
+            this.links = new Transport[nodes.length];
+            this.senders = new ThreadPoolExecutor[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                if (i == self) continue;
+                final int node = i;
+                senders[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "bus-send-" + node);
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
         }
         
-        public int getLosses() {
-            return losses;
+        public int self() {
+            return self;
         }
         
-        public int getTies() {
-            return ties;
+        public int size() {
+            return nodes.length;
         }
         
-        public int getTotalGames() {
-            return wins + losses + ties;
+        // Messages queued for peers but not written yet
+        public int backlog() {
+            int queued = 0;
+            for (ThreadPoolExecutor sender : senders) {
+                if (sender != null) {
+                    queued += sender.getQueue().size();
+                }
+            }
+            return queued;
         }
         
-        public String getCurrentLobbyId() {
-            return currentLobbyId;
+        public void start() throws IOException {
+            ServerSocket listener = new ServerSocket(port(self), 50, InetAddress.getByName(config.bindAddress));
+            Thread acceptThread = new Thread(() -> {
+                while (true) {
+                    try {
+                        Transport inbound = new Transport.SocketTransport(listener.accept());
+                        Thread reader = new Thread(() -> serve(inbound), "bus-receive");
+                        reader.setDaemon(true);
+                        reader.start();
+                    } catch (IOException e) {
+                        logger.warning("Error accepting cluster connection: " + e.getMessage());
+                    }
+                }
+            }, "bus-accept");
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+            logger.info("Cluster node " + self + " of " + nodes.length + " listening for peers on " + nodes[self]);
         }
         
-        public void setCurrentLobbyId(String lobbyId) {
-            this.currentLobbyId = lobbyId;
+        public void send(int node, String line) {
+            if (node == self) {
+                handleClusterMessage(line);
+                return;
+            }
+            senders[node].execute(() -> write(node, line));
         }
         
-        public String getCurrentGameId() {
-            return currentGameId;
+        public void broadcast(String line) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (i != self) send(i, line);
+            }
         }
         
-        public void setCurrentGameId(String gameId) {
-            this.currentGameId = gameId;
+        // Sender thread for this node only
+        private void write(int node, String line) {
+            if (links[node] == null) {
+                String[] address = nodes[node].trim().split(":");
+                try {
+                    Transport link = Transport.connect(address[0], Integer.parseInt(address[1]), CONNECT_TIMEOUT_MS);
+                    link.send("HELLO " + config.clusterSecret);
+                    links[node] = link;
+                    
+                    // Peers never write back on this link, so a read only returns when it breaks
+                    Thread watcher = new Thread(() -> {
+                        try {
+                            while (link.receive() != null) { }
+                        } catch (IOException e) {
+                            // Treated as a broken link below
+                        }
+                        senders[node].execute(() -> {
+                            if (links[node] == link) links[node] = null;
+                        });
+                        link.close();
+                    }, "bus-watch-" + node);
+                    watcher.setDaemon(true);
+                    watcher.start();
+                } catch (IOException e) {
+                    logger.warning("Cluster node " + node + " unreachable, dropping: " + line);
+                    return;
+                }
+            }
+            links[node].send(line);
         }
         
-        public void updateLastActivity() {
-            this.lastActivity = new Timestamp(System.currentTimeMillis());
+        private void serve(Transport inbound) {
+            try {
+                String hello = inbound.receive();
+                if (hello == null || !hello.equals("HELLO " + config.clusterSecret)) {
+                    logger.warning("Rejected cluster link from " + inbound.getRemoteAddress());
+                    return;
+                }
+                
+                String line;
+                while ((line = inbound.receive()) != null) {
+                    try {
+                        handleClusterMessage(line);
+                    } catch (RuntimeException e) {
+                        logger.warning("Bad cluster message '" + line + "': " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                // Peer went away; it reconnects on its next send
+            } finally {
+                inbound.close();
+            }
         }
         
-        public String getStats() {
-            double winRate = getTotalGames() > 0 ? (double) wins / getTotalGames() * 100 : 0;
-            return String.format("Name: %s | Rating: %d | W/L/T: %d/%d/%d | Win Rate: %.1f%%", 
-                                name, rating, wins, losses, ties, winRate);
+        private int port(int node) {
+            return Integer.parseInt(nodes[node].trim().split(":")[1]);
+        }
+    }
+    
+    // Token bucket limiting how often a single player may chat
+    private static class ChatRateLimiter {
+        private final int capacity;
+        private final double refillPerNano;
+        private double tokens;
+        private long lastRefill;
+        
+        public ChatRateLimiter(int capacity, double refillPerSecond) {
+            this.capacity = capacity;
+            this.refillPerNano = refillPerSecond / 1_000_000_000.0;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+        
+        public synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+            lastRefill = now;
+            
+            if (tokens < 1.0) {
+                return false;
+            }
+            tokens -= 1.0;
+            return true;
         }
     }
     
     // Class for game lobbies
     private static class GameLobby {
         private String id;
+        private final long key;
         private String name;
         private String description;
-        private Set<String> playerIds = ConcurrentHashMap.newKeySet();
+        private boolean overflow;
+        // Sorted so the roster can be paged by player id without copying it
+        private NavigableSet<String> playerIds = new ConcurrentSkipListSet<>();
+        // Registry handles of the members, copied on write so broadcasts iterate a plain array
+        private volatile int[] memberHandles = new int[0];
+        private AtomicInteger playerCount = new AtomicInteger(0);
         private Timestamp createdAt;
         
-        public GameLobby(String name, String description) {
-            this.id = UUID.randomUUID().toString();
+        // Versioned roster: every membership change bumps the version and lands in a bounded ring
+        private long rosterVersion = 0;
+        private final RosterChange[] rosterChanges = new RosterChange[ROSTER_HISTORY_SIZE];
+        private long snapshotVersion = -1;
+        private String snapshot;
+        
+        // Chat lines waiting for the next flush, and the most recent lines for new joiners
+        private final Queue<String> pendingChat = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingChatCount = new AtomicInteger(0);
+        private final Deque<String> chatBacklog = new ArrayDeque<>(CHAT_BACKLOG_SIZE);
+        
+        // creatorId is the player whose join or command made the lobby, null for the default lobby
+        public GameLobby(String name, String description, boolean overflow, String creatorId) {
+            this.id = issue(ids.nextWire(), creatorId == null ? "lobby" : "lobby:" + creatorId);
+            this.key = IdAllocator.parse(id);
             this.name = name;
             this.description = description;
+            this.overflow = overflow;
             this.createdAt = new Timestamp(System.currentTimeMillis());
         }
         
@@ -243,6 +3394,10 @@ public class TicTacToeServer {
             return id;
         }
         
+        public long getKey() {
+            return key;
+        }
+        
         public String getName() {
             return name;
         }
@@ -251,100 +3406,335 @@ public class TicTacToeServer {
             return description;
         }
         
+        public boolean isOverflow() {
+            return overflow;
+        }
+        
+        public boolean isFull() {
+            return playerCount.get() >= config.maxLobbySize;
+        }
+        
+        public int getPlayerCount() {
+            return playerCount.get();
+        }
+        
         public void addPlayer(String playerId) {
-            playerIds.add(playerId);
-            
-            // Notify all players in lobby about new player
-            broadcastToLobby("LOBBY_JOIN:" + playerId + ":" + 
-                            activePlayers.getOrDefault(playerId, new Player(playerId, "Unknown", null)).getName());
+            long version = join(playerId);
+            if (version >= 0) {
+                announceJoin(playerId, version);
+            }
+        }
+        
+        // Membership only, for callers holding lobbyLock: returns the roster version of the join, or -1 if the
+        // player was already in. The caller broadcasts it with announceJoin once the lock is released.
+        public long join(String playerId) {
+            Player player = activePlayers.get(playerId);
+            String playerName = player != null ? player.getName() : "Unknown";
+            synchronized (this) {
+                if (!playerIds.add(playerId)) {
+                    return -1;
+                }
+                if (player != null) {
+                    int[] handles = Arrays.copyOf(memberHandles, memberHandles.length + 1);
+                    handles[handles.length - 1] = player.getHandle();
+                    memberHandles = handles;
+                }
+                playerCount.incrementAndGet();
+                return recordChange(RosterChange.JOIN, playerId, playerName);
+            }
+        }
+        
+        // Notify all players in lobby about new player
+        public void announceJoin(String playerId, long version) {
+            Player player = activePlayers.get(playerId);
+            broadcastToLobby("LOBBY_JOIN:" + playerId + ":" + version + ":" + (player != null ? player.getName() : "Unknown"));
         }
         
         public void removePlayer(String playerId) {
-            playerIds.remove(playerId);
+            long version = leave(playerId);
+            if (version >= 0) {
+                announceLeave(playerId, version);
+            }
+        }
+        
+        // Counterpart of join: -1 if the player was not in the lobby
+        public long leave(String playerId) {
+            synchronized (this) {
+                if (!playerIds.remove(playerId)) {
+                    return -1;
+                }
+                dropHandle(activePlayers.handleOf(playerId));
+                playerCount.decrementAndGet();
+                return recordChange(RosterChange.LEAVE, playerId, null);
+            }
+        }
+        
+        // Notify all players in lobby about player leaving
+        public void announceLeave(String playerId, long version) {
+            broadcastToLobby("LOBBY_LEAVE:" + playerId + ":" + version);
+        }
+        
+        public void renamePlayer(String playerId, String name) {
+            long version;
+            synchronized (this) {
+                if (!playerIds.contains(playerId)) {
+                    return;
+                }
+                version = recordChange(RosterChange.RENAME, playerId, name);
+            }
+            
+            // Versioned like joins and leaves, so clients apply it in order with the rest of the roster
+            broadcastToLobby("LOBBY_RENAME:" + playerId + ":" + version + ":" + name);
+        }
+        
+        // Caller must hold the lobby monitor
+        private void dropHandle(int handle) {
+            int[] handles = memberHandles;
+            for (int i = 0; i < handles.length; i++) {
+                if (handles[i] == handle) {
+                    int[] shrunk = Arrays.copyOf(handles, handles.length - 1);
+                    System.arraycopy(handles, i + 1, shrunk, i, handles.length - i - 1);
+                    memberHandles = shrunk;
+                    return;
+                }
+            }
+        }
+        
+        // Caller must hold the lobby monitor
+        private long recordChange(char type, String playerId, String playerName) {
+            rosterVersion++;
+            rosterChanges[(int) (rosterVersion % ROSTER_HISTORY_SIZE)] = 
+                new RosterChange(type, playerId, playerName);
+            return rosterVersion;
+        }
+        
+        public synchronized long getRosterVersion() {
+            return rosterVersion;
+        }
+        
+        // Changes after the given version, or null when the ring no longer reaches back that far
+        public synchronized String getRosterDelta(long sinceVersion) {
+            if (sinceVersion < 0 || sinceVersion > rosterVersion 
+                    || rosterVersion - sinceVersion > ROSTER_HISTORY_SIZE) {
+                return null;
+            }
             
-            // Notify all players in lobby about player leaving
-            broadcastToLobby("LOBBY_LEAVE:" + playerId);
+            StringBuilder delta = new StringBuilder("ROSTER_DELTA:")
+                .append(sinceVersion).append(":").append(rosterVersion).append(":");
+            for (long v = sinceVersion + 1; v <= rosterVersion; v++) {
+                rosterChanges[(int) (v % ROSTER_HISTORY_SIZE)].appendTo(delta);
+            }
+            return delta.toString();
+        }
+        
+        // Full roster at the current version; built at most once per version however many ask for it
+        public synchronized String getRosterSnapshot() {
+            if (snapshotVersion != rosterVersion) {
+                StringBuilder full = new StringBuilder("ROSTER_SNAPSHOT:").append(rosterVersion).append(":");
+                for (String pid : playerIds) {
+                    Player p = activePlayers.get(pid);
+                    full.append(pid).append(":").append(p != null ? p.getName() : "Unknown").append("|");
+                }
+                snapshot = full.toString();
+                snapshotVersion = rosterVersion;
+            }
+            return snapshot;
         }
         
         public Set<String> getPlayerIds() {
             return playerIds;
         }
         
+        // Player ids strictly after the given cursor (null for the first page), in roster order
+        public List<String> getPlayerPage(String afterPlayerId, int limit) {
+            Set<String> tail = afterPlayerId == null ? playerIds : playerIds.tailSet(afterPlayerId, false);
+            List<String> page = new ArrayList<>(Math.min(limit, playerCount.get()));
+            for (String pid : tail) {
+                if (page.size() >= limit) break;
+                page.add(pid);
+            }
+            return page;
+        }
+        
         public void broadcastToLobby(String message) {
-            for (String playerId : playerIds) {
-                Player player = activePlayers.get(playerId);
+            for (int handle : memberHandles) {
+                Player player = activePlayers.get(handle);
                 if (player != null && player.getClientHandler() != null) {
                     player.getClientHandler().sendMessage(message);
                 }
             }
         }
         
+        // Chat is queued and delivered in coalesced batches by flushChat
         public void broadcastChat(String senderId, String message) {
             Player sender = activePlayers.get(senderId);
             if (sender != null) {
-                String chatMessage = "LOBBY_CHAT:" + sender.getName() + ":" + message;
-                broadcastToLobby(chatMessage);
+                postChat("LOBBY_CHAT:" + sender.getName() + ":" + message);
+            }
+        }
+        
+        // Queue an already formatted LOBBY_CHAT line, e.g. one relayed from another node
+        public void postChat(String line) {
+            pendingChat.add(line);
+            pendingChatCount.incrementAndGet();
+        }
+        
+        // Chat lines waiting for the next flush
+        public int getPendingChat() {
+            return pendingChatCount.get();
+        }
+        
+        // Send everything queued since the last flush as one multi-line frame per member
+        public void flushChat() {
+            if (pendingChat.isEmpty()) {
+                return;
+            }
+            
+            StringBuilder frame = new StringBuilder();
+            String line;
+            synchronized (chatBacklog) {
+                while ((line = pendingChat.poll()) != null) {
+                    pendingChatCount.decrementAndGet();
+                    if (frame.length() > 0) frame.append("\n");
+                    frame.append(line);
+                    
+                    if (chatBacklog.size() == CHAT_BACKLOG_SIZE) {
+                        chatBacklog.removeFirst();
+                    }
+                    chatBacklog.addLast(line);
+                }
+            }
+            
+            broadcastToLobby(frame.toString());
+        }
+        
+        // Recent chat as a single multi-line payload, or null if the lobby has been quiet
+        public String getChatBacklog() {
+            synchronized (chatBacklog) {
+                return chatBacklog.isEmpty() ? null : String.join("\n", chatBacklog);
+            }
+        }
+    }
+    
+    // Single entry in a lobby's roster change ring
+    private static class RosterChange {
+        static final char JOIN = '+';
+        static final char LEAVE = '-';
+        static final char RENAME = '~';
+        
+        private final char type;
+        private final String playerId;
+        private final String playerName;
+        
+        RosterChange(char type, String playerId, String playerName) {
+            this.type = type;
+            this.playerId = playerId;
+            this.playerName = playerName;
+        }
+        
+        // Format: +id:name| for joins, ~id:name| for renames, -id| for leaves
+        void appendTo(StringBuilder sb) {
+            sb.append(type).append(playerId);
+            if (playerName != null) {
+                sb.append(":").append(playerName);
             }
+            sb.append("|");
         }
     }
     
     // Class to handle individual client connections
     private static class ClientHandler implements Runnable {
-        private Socket socket;
-        private PrintWriter out;
-        private BufferedReader in;
+        private final Transport transport;
+        private final int connectionId = nextConnectionId.incrementAndGet(); // Journal key for this connection
+        private volatile boolean open = false; // Set once the handler is ready to send
         private Player player;
         private String playerId;
         private boolean authenticated = false;
         private AtomicBoolean running = new AtomicBoolean(true);
+        private AtomicBoolean closed = new AtomicBoolean(false);
         
-        public ClientHandler(Socket socket) {
-            this.socket = socket;
-            this.playerId = UUID.randomUUID().toString();
+        public ClientHandler(Transport transport) {
+            this.transport = transport;
+            this.playerId = issue(ids.nextWire(), "player:c" + connectionId);
         }
         
         @Override
         public void run() {
             try {
-                // Set up input and output streams
-                out = new PrintWriter(socket.getOutputStream(), true);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                
-                // Create a new player
-                player = new Player(playerId, "Player" + playerId.substring(0, 4), this);
-                activePlayers.put(playerId, player);
-                
-                // Send welcome message
-                sendMessage("CONNECTED:" + playerId);
-                sendMessage("SERVER_INFO:Welcome to Tic Tac Toe Server! Server time: " + 
-                          new Date().toString());
-                
-                // Join default lobby
-                GameLobby defaultLobby = lobbies.values().iterator().next();
-                defaultLobby.addPlayer(playerId);
-                
-                // Tell the player about the lobby they joined
-                sendMessage("JOINED_LOBBY:" + defaultLobby.getId() + ":" + defaultLobby.getName());
-                
-                // Send list of players in lobby
-                sendLobbyPlayerList(defaultLobby);
+                welcome();
                 
                 String inputLine;
                 // Process client messages
-                while (running.get() && (inputLine = in.readLine()) != null) {
-                    processCommand(inputLine);
-                    player.updateLastActivity();
+                while (running.get() && (inputLine = transport.receive()) != null) {
+                    handleLine(inputLine);
                 }
             } catch (IOException e) {
                 logger.info("Connection lost with player: " + playerId + " - " + e.getMessage());
             } finally {
-                cleanup();
+                CommandJournal j = journal;
+                if (j != null) {
+                    j.close(connectionId);
+                }
+                connectionLost();
+            }
+        }
+        
+        // Register the player and send the initial lobby state
+        private void welcome() {
+            CommandJournal j = journal;
+            if (j != null) {
+                j.open(connectionId);
+            }
+            open = true;
+            
+            // Create a new player
+            player = new Player(playerId, "Player" + playerId.substring(playerId.length() - 4), this);
+            player.setSessionToken(newSessionToken(playerId));
+            activePlayers.put(playerId, player);
+            sessionTokens.put(player.getSessionToken(), playerId);
+            
+            // Send welcome message with the token needed to resume this session
+            sendMessage("CONNECTED:" + playerId + ":" + player.getSessionToken());
+            sendMessage("SERVER_INFO:Welcome to Tic Tac Toe Server! Server time: " + 
+                      new Date().toString());
+            
+            // Join default lobby (or one of its overflow lobbies)
+            GameLobby lobby = joinDefaultLobby(playerId);
+            player.setCurrentLobbyId(lobby.getId());
+            
+            // Tell the player about the lobby they joined
+            sendMessage("JOINED_LOBBY:" + lobby.getId() + ":" + lobby.getName());
+            
+            // Send the roster version with the first page of players in lobby, then the recent chat
+            sendRosterStart(lobby);
+            sendChatBacklog(lobby);
+        }
+        
+        // One inbound line, journaled first when recording
+        private void handleLine(String line) {
+            CommandJournal j = journal;
+            if (j != null) {
+                j.command(connectionId, line);
+            }
+            processCommand(line);
+            player.updateLastActivity();
+        }
+        
+        // ROSTER_VERSION and the first roster page, taken together under the lobby monitor: the page holds
+        // every change up to that version, and LOBBY_JOIN/LOBBY_LEAVE/LOBBY_RENAME with a later version reach this
+        // connection only after both
+        private void sendRosterStart(GameLobby lobby) {
+            synchronized (lobby) {
+                sendMessage("ROSTER_VERSION:" + lobby.getRosterVersion());
+                sendLobbyPlayerList(lobby, null);
             }
         }
         
-        private void sendLobbyPlayerList(GameLobby lobby) {
+        // Send one page of the lobby roster; a PLAYER_LIST_MORE:<total>:<cursor> follows when more remain
+        private void sendLobbyPlayerList(GameLobby lobby, String afterPlayerId) {
+            List<String> page = lobby.getPlayerPage(afterPlayerId, PLAYER_LIST_PAGE_SIZE);
             StringBuilder playerList = new StringBuilder("PLAYER_LIST:");
-            for (String pid : lobby.getPlayerIds()) {
+            for (String pid : page) {
                 Player p = activePlayers.get(pid);
                 if (p != null) {
                     playerList.append(pid).append(":").append(p.getName()).append(":");
@@ -352,43 +3742,51 @@ public class TicTacToeServer {
                 }
             }
             sendMessage(playerList.toString());
+            
+            if (page.size() == PLAYER_LIST_PAGE_SIZE) {
+                String cursor = page.get(page.size() - 1);
+                if (lobby.getPlayerPage(cursor, 1).size() > 0) {
+                    sendMessage("PLAYER_LIST_MORE:" + lobby.getPlayerCount() + ":" + cursor);
+                }
+            }
         }
         
         // Process commands received from the client
         private void processCommand(String command) {
-            logger.fine("Received from " + playerId + ": " + command);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Received from " + playerId + ": " + command);
+            }
             
             if (command.startsWith("NAME:")) {
                 String name = command.substring(5).trim();
-                if (!name.isEmpty()) {
+                if (hasListSeparator(name)) {
+                    // Names go into ':'-separated messages and '|'-separated roster pages
+                    sendMessage("ERROR:Name cannot contain ':' or '|'");
+                } else if (!name.isEmpty()) {
                     player.setName(name);
                     
                     // Notify lobby of name change
-                    GameLobby lobby = lobbies.get(player.getCurrentLobbyId());
+                    GameLobby lobby = lobbyFor(player.getCurrentLobbyId());
                     if (lobby != null) {
-                        lobby.broadcastToLobby("PLAYER_UPDATE:" + playerId + ":name:" + name);
+                        lobby.renamePlayer(playerId, name);
                     }
                     
                     logger.info("Player " + playerId + " set name to: " + name);
                 }
             } 
             else if (command.startsWith("CHAT:")) {
-                String message = command.substring(5);
-                GameLobby lobby = lobbies.get(player.getCurrentLobbyId());
-                if (lobby != null) {
-                    lobby.broadcastChat(playerId, message);
-                }
+                handleLobbyChat(command.substring(5));
             } 
             else if (command.startsWith("LOBBY_CHAT:")) {
-                String message = command.substring(11);
-                GameLobby lobby = lobbies.get(player.getCurrentLobbyId());
-                if (lobby != null) {
-                    lobby.broadcastChat(playerId, message);
-                }
+                handleLobbyChat(command.substring(11));
             } 
             else if (command.startsWith("GAME_CHAT:")) {
                 String message = command.substring(10);
-                handleGameChat(message);
+                if (player.tryChat()) {
+                    handleGameChat(message);
+                } else {
+                    sendMessage("ERROR:You are sending messages too quickly");
+                }
             } 
             else if (command.equals("LIST_LOBBIES")) {
                 sendLobbyList();
@@ -397,11 +3795,44 @@ public class TicTacToeServer {
                 String lobbyId = command.substring(11);
                 joinLobby(lobbyId);
             } 
+            else if (command.startsWith("CREATE_LOBBY:")) {
+                createLobby(command.substring(13));
+            } 
+            else if (command.startsWith("ROSTER_SYNC:")) {
+                syncRoster(command.substring(12));
+            } 
+            else if (command.startsWith("GET_PLAYERS:")) {
+                GameLobby lobby = lobbyFor(player.getCurrentLobbyId());
+                if (lobby != null) {
+                    sendLobbyPlayerList(lobby, command.substring(12));
+                }
+            } 
             else if (command.equals("FIND_GAME")) {
                 findGame();
             } 
+            else if (command.equals("LIST_TOURNAMENTS")) {
+                sendTournamentList();
+            } 
+            else if (command.startsWith("TOURNAMENT_CREATE:")) {
+                createTournament(command.substring(18));
+            } 
+            else if (command.startsWith("TOURNAMENT_JOIN:")) {
+                joinTournament(command.substring(16));
+            } 
+            else if (command.startsWith("TOURNAMENT_START:")) {
+                startTournament(command.substring(17));
+            } 
+            else if (command.equals("TOURNAMENT_LEAVE")) {
+                leaveTournament();
+            } 
+            else if (command.equals("TOURNAMENT_STANDINGS")) {
+                Tournament tournament = player.getTournament();
+                if (tournament != null) {
+                    sendMessage(tournament.getStandings());
+                }
+            } 
             else if (command.startsWith("MOVE:")) {
-                makeMove(command.substring(5));
+                makeMove(command);
             } 
             else if (command.startsWith("REMATCH:")) {
                 handleRematchRequest(command.substring(8));
@@ -418,47 +3849,157 @@ public class TicTacToeServer {
             else if (command.equals("GET_LEADERBOARD")) {
                 sendLeaderboard();
             } 
+            else if (command.startsWith("GET_LEADERBOARD:")) {
+                sendLeaderboardPage(command.substring(16));
+            } 
             else if (command.equals("GET_HISTORY")) {
                 sendGameHistory();
             } 
+            else if (command.startsWith("RESUME:")) {
+                resumeSession(command.substring(7));
+            } 
             else if (command.equals("QUIT")) {
                 cleanup();
             }
         }
         
-        private void sendLobbyList() {
-            StringBuilder lobbyList = new StringBuilder("LOBBY_LIST:");
-            for (GameLobby lobby : lobbies.values()) {
-                lobbyList.append(lobby.getId()).append(":")
-                         .append(lobby.getName()).append(":")
-                         .append(lobby.getDescription()).append(":")
-                         .append(lobby.getPlayerIds().size()).append("|");
+        // Format: ROSTER_SYNC:<version>; answers with a delta when possible, else a full snapshot
+        private void syncRoster(String versionStr) {
+            GameLobby lobby = lobbyFor(player.getCurrentLobbyId());
+            if (lobby == null) {
+                return;
+            }
+            
+            long sinceVersion;
+            try {
+                sinceVersion = Long.parseLong(versionStr.trim());
+            } catch (NumberFormatException e) {
+                sinceVersion = -1;
+            }
+            
+            String delta = lobby.getRosterDelta(sinceVersion);
+            sendMessage(delta != null ? delta : lobby.getRosterSnapshot());
+        }
+        
+        // LOBBY_LIST and TOURNAMENT_LIST separate fields with ':' and entries with '|'
+        private boolean hasListSeparator(String text) {
+            return text.indexOf(':') >= 0 || text.indexOf('|') >= 0;
+        }
+        
+        private void sendLobbyList() {
+            StringBuilder lobbyList = new StringBuilder("LOBBY_LIST:");
+            for (GameLobby lobby : lobbies.values()) {
+                lobbyList.append(lobby.getId()).append(":")
+                         .append(lobby.getName()).append(":")
+                         .append(lobby.getDescription()).append(":")
+                         .append(lobby.getPlayerCount()).append("|");
+            }
+            sendMessage(lobbyList.toString());
+        }
+        
+        private void joinLobby(String lobbyId) {
+            GameLobby newLobby;
+            String error = null;
+            Runnable announce = null;
+            // Checked and joined under the lock, so concurrent joins cannot overfill the lobby or land in a pruned one
+            synchronized (lobbyLock) {
+                newLobby = lobbyFor(lobbyId);
+                if (newLobby == null) {
+                    error = "Lobby does not exist";
+                } else if (lobbyId.equals(player.getCurrentLobbyId())) {
+                    return;
+                } else if (newLobby.isFull()) {
+                    error = "Lobby is full";
+                } else {
+                    announce = switchLobby(newLobby);
+                }
+            }
+            if (error != null) {
+                sendMessage("ERROR:" + error);
+                return;
+            }
+            announce.run();
+            enterLobby(newLobby);
+        }
+        
+        // Caller holds lobbyLock: moves this player's membership to target and returns the broadcasts of the
+        // leave and the join, to run once the lock is released
+        private Runnable switchLobby(GameLobby target) {
+            GameLobby currentLobby = lobbyFor(player.getCurrentLobbyId());
+            long left = currentLobby != null ? currentLobby.leave(playerId) : -1;
+            long joined = target.join(playerId);
+            player.setCurrentLobbyId(target.getId());
+            return () -> {
+                if (left >= 0) {
+                    currentLobby.announceLeave(playerId, left);
+                }
+                if (joined >= 0) {
+                    target.announceJoin(playerId, joined);
+                }
+            };
+        }
+        
+        private void enterLobby(GameLobby lobby) {
+            // Notify player
+            sendMessage("JOINED_LOBBY:" + lobby.getId() + ":" + lobby.getName());
+            
+            // Send the roster version with the first page of the player list, then the recent chat
+            sendRosterStart(lobby);
+            sendChatBacklog(lobby);
+        }
+        
+        // Format: CREATE_LOBBY:name or CREATE_LOBBY:name:description
+        private void createLobby(String args) {
+            String[] parts = args.split(":", 2);
+            String name = parts[0].trim();
+            String description = parts.length > 1 ? parts[1].trim() : "";
+            if (name.isEmpty()) {
+                sendMessage("ERROR:Lobby name cannot be empty");
+                return;
             }
-            sendMessage(lobbyList.toString());
+            if (hasListSeparator(name) || hasListSeparator(description)) {
+                sendMessage("ERROR:Lobby name and description cannot contain ':' or '|'");
+                return;
+            }
+            
+            GameLobby lobby = new GameLobby(name, description, false, playerId);
+            Runnable announce;
+            // Register and join together so the lobby is never pruned while still empty
+            synchronized (lobbyLock) {
+                lobbies.put(lobby.getKey(), lobby);
+                announce = switchLobby(lobby);
+            }
+            logger.info("Player " + player.getName() + " (" + playerId + ") created lobby: " + name);
+            sendMessage("LOBBY_CREATED:" + lobby.getId() + ":" + lobby.getName());
+            announce.run();
+            enterLobby(lobby);
         }
         
-        private void joinLobby(String lobbyId) {
-            if (!lobbies.containsKey(lobbyId)) {
-                sendMessage("ERROR:Lobby does not exist");
+        private void handleLobbyChat(String message) {
+            if (!player.tryChat()) {
+                sendMessage("ERROR:You are sending messages too quickly");
                 return;
             }
             
-            // Leave current lobby
-            GameLobby currentLobby = lobbies.get(player.getCurrentLobbyId());
-            if (currentLobby != null) {
-                currentLobby.removePlayer(playerId);
+            GameLobby lobby = lobbyFor(player.getCurrentLobbyId());
+            if (lobby != null) {
+                lobby.broadcastChat(playerId, message);
+                
+                // The main lobby exists on every node, so its chat is cluster-wide
+                if (lobby == defaultLobby && cluster != null) {
+                    cluster.broadcast("LOBBY_CHAT:" + player.getName() + ":" + message);
+                }
+            }
+        }
+        
+        private void sendChatBacklog(GameLobby lobby) {
+            if (admission.isChatDegraded()) {
+                return; // Shed first under load: joiners see new chat only
+            }
+            String backlog = lobby.getChatBacklog();
+            if (backlog != null) {
+                sendMessage(backlog);
             }
-            
-            // Join new lobby
-            GameLobby newLobby = lobbies.get(lobbyId);
-            newLobby.addPlayer(playerId);
-            player.setCurrentLobbyId(lobbyId);
-            
-            // Notify player
-            sendMessage("JOINED_LOBBY:" + newLobby.getId() + ":" + newLobby.getName());
-            
-            // Send player list
-            sendLobbyPlayerList(newLobby);
         }
         
         private void handleGameChat(String message) {
@@ -466,104 +4007,176 @@ public class TicTacToeServer {
                 return;
             }
             
-            Game game = activeGames.get(player.getCurrentGameId());
+            String gameId = player.getCurrentGameId();
+            Game game = gameFor(gameId);
             if (game != null) {
                 game.broadcastChat(player.getId(), message);
+            } else if (!ownsLocally(IdAllocator.parse(gameId))) {
+                cluster.send(ownerOf(IdAllocator.parse(gameId)), "GAME_CHAT:" + gameId + ":" + playerId + ":" + message);
             }
         }
         
         private void findGame() {
-            // If player is already in a game, do nothing
-            if (player.getCurrentGameId() != null) {
+            // If player is still playing a game, do nothing
+            if (inLiveGame(player)) {
                 sendMessage("ERROR:You are already in a game");
                 return;
             }
             
+            Tournament tournament = player.getTournament();
+            if (tournament != null && tournament.isRunning()) {
+                sendMessage("ERROR:You are playing in a tournament");
+                return;
+            }
+            
             // If player is already waiting, remove them
-            if (waitingPlayers.contains(playerId)) {
-                waitingPlayers.remove(playerId);
+            if (cancelMatch(player)) {
                 sendMessage("ERROR:Canceled matchmaking");
                 return;
             }
             
-            // If there are no waiting players, this player waits
-            if (waitingPlayers.isEmpty()) {
-                waitingPlayers.add(playerId);
-                sendMessage("WAITING");
-                logger.info("Player " + player.getName() + " (" + playerId + ") is waiting for an opponent");
-            } else {
-                // Get best match from waiting players based on rating
-                String opponentId = findBestMatch();
-                waitingPlayers.remove(opponentId);
-                
-                // Create new game
-                createGame(player, activePlayers.get(opponentId));
+            if (draining) {
+                sendMessage("SERVER_INFO:The server is restarting, so matchmaking is closed. Please search again in a moment.");
+                return;
             }
+            
+            // Pools are per rating band; GAME_STARTED follows as soon as the band has a second player
+            sendMessage("WAITING");
+            if (admission.isMatchmakingPaused()) {
+                sendMessage("SERVER_INFO:The server is busy, so matchmaking is paused. You keep your place in the queue.");
+            }
+            logger.info("Player " + player.getName() + " (" + playerId + ") is waiting for an opponent in band " + 
+                        ratingBand(player.getRating()));
+            requestMatch(player);
         }
         
-        private String findBestMatch() {
-            // Simple implementation: just get the first waiting player
-            // Could be improved with rating-based matchmaking
-            return waitingPlayers.iterator().next();
+        private void sendTournamentList() {
+            StringBuilder list = new StringBuilder("TOURNAMENT_LIST:");
+            for (Tournament tournament : tournaments.values()) {
+                list.append(tournament.describe()).append("|");
+            }
+            sendMessage(list.toString());
         }
         
-        private void createGame(Player player1, Player player2) {
-            // Generate game ID
-            String gameId = UUID.randomUUID().toString();
-            
-            // Create new game
-            Game game = new Game(gameId, player1.getId(), player2.getId());
-            activeGames.put(gameId, game);
-            
-            // Update player game IDs
-            player1.setCurrentGameId(gameId);
-            player2.setCurrentGameId(gameId);
-            
-            // Log game creation
-            logger.info("Game " + gameId + " created between " + player1.getName() + " and " + player2.getName());
-            
-            // Store in history
-            recordGameInHistory(player1.getId(), gameId);
-            recordGameInHistory(player2.getId(), gameId);
-            
-            // Track total games
-            totalGamesPlayed.incrementAndGet();
+        // Format: TOURNAMENT_CREATE:<SWISS|ROUND_ROBIN|SINGLE_ELIMINATION>:<name>; the creator is entered and hosts
+        private void createTournament(String args) {
+            String[] parts = args.split(":", 2);
+            Tournament.Format format;
+            try {
+                format = Tournament.Format.valueOf(parts[0].trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                sendMessage("ERROR:Unknown tournament format");
+                return;
+            }
+            String name = parts.length > 1 ? parts[1].trim() : "";
+            if (name.isEmpty()) {
+                sendMessage("ERROR:Tournament name cannot be empty");
+                return;
+            }
+            if (hasListSeparator(name)) {
+                sendMessage("ERROR:Tournament name cannot contain ':' or '|'");
+                return;
+            }
+            if (player.getTournament() != null) {
+                sendMessage("ERROR:You are already in a tournament");
+                return;
+            }
             
-            // Start the game
-            game.start();
+            Tournament tournament = new Tournament(name, format, player);
+            tournaments.put(tournament.getKey(), tournament);
+            tournament.join(player);
+            logger.info("Player " + player.getName() + " (" + playerId + ") created " + format + " tournament: " + name);
+            sendMessage("TOURNAMENT_CREATED:" + tournament.getId() + ":" + format + ":" + name);
+        }
+        
+        private void joinTournament(String tournamentId) {
+            Tournament tournament = tournaments.get(IdAllocator.parse(tournamentId));
+            if (tournament == null) {
+                sendMessage("ERROR:Tournament does not exist");
+                return;
+            }
+            Tournament current = player.getTournament();
+            if (current != null && current != tournament) {
+                sendMessage("ERROR:You are already in a tournament");
+                return;
+            }
+            if (inLiveGame(player)) {
+                sendMessage("ERROR:Finish your current game first");
+                return;
+            }
+            if (!tournament.join(player)) {
+                sendMessage("ERROR:Tournament has already started");
+                return;
+            }
+            sendMessage("TOURNAMENT_JOINED:" + tournament.getId() + ":" + tournament.getName());
+        }
+        
+        private void startTournament(String tournamentId) {
+            Tournament tournament = tournaments.get(IdAllocator.parse(tournamentId));
+            if (tournament == null || !tournament.isHost(player)) {
+                sendMessage("ERROR:Only the host can start a tournament");
+                return;
+            }
+            if (draining) {
+                sendMessage("ERROR:Server is restarting");
+                return;
+            }
+            String error = tournament.start();
+            if (error != null) {
+                sendMessage("ERROR:" + error);
+            }
         }
         
-        private void recordGameInHistory(String playerId, String gameId) {
-            playerGameHistory.computeIfAbsent(playerId, k -> new ArrayList<>()).add(gameId);
+        private void leaveTournament() {
+            Tournament tournament = player.getTournament();
+            if (tournament == null) {
+                sendMessage("ERROR:You are not in a tournament");
+                return;
+            }
+            tournament.withdraw(player);
+            sendMessage("TOURNAMENT_LEFT:" + tournament.getId());
         }
         
-        private void makeMove(String positionStr) {
+        // Format: MOVE:<position> or MOVE:<position>:<seq> from clients that predict their moves
+        private void makeMove(String command) {
             if (player.getCurrentGameId() == null) {
                 sendMessage("ERROR:You are not in a game");
                 return;
             }
             
-            Game game = activeGames.get(player.getCurrentGameId());
+            // openGame hands the game to its players, so the id is only looked up (boxing its key) for
+            // games that arrived some other way, such as a handoff
+            String gameId = player.getCurrentGameId();
+            Game game = player.getCurrentGame();
             if (game == null) {
+                game = gameFor(gameId);
+                player.setCurrentGame(game);
+            }
+            if (game != null) {
+                submitMove(game, playerId, command, 5);
+            } else if (!ownsLocally(IdAllocator.parse(gameId))) {
+                // Hosted on another node, which answers through DELIVER
+                cluster.send(ownerOf(IdAllocator.parse(gameId)), "MOVE:" + gameId + ":" + playerId + ":" + command.substring(5));
+            } else {
                 sendMessage("ERROR:Game not found");
                 player.setCurrentGameId(null);
-                return;
-            }
-            
-            try {
-                int position = Integer.parseInt(positionStr);
-                game.makeMove(player.getId(), position);
-            } catch (NumberFormatException e) {
-                sendMessage("ERROR:Invalid position format");
             }
         }
         
         private void handleRematchRequest(String gameId) {
-            Game game = activeGames.get(gameId);
+            Game game = gameFor(gameId);
             if (game == null || !game.isGameOver()) {
                 sendMessage("ERROR:Invalid game for rematch");
                 return;
             }
+            if (game.getTournament() != null) {
+                sendMessage("ERROR:No rematches in tournament games");
+                return;
+            }
+            if (draining) {
+                sendMessage("ERROR:Server is restarting");
+                return;
+            }
             
             // Get opponent
             String opponentId = game.getOpponentId(player.getId());
@@ -588,7 +4201,7 @@ public class TicTacToeServer {
                 return;
             }
             
-            Game currentGame = activeGames.get(player.getCurrentGameId());
+            Game currentGame = gameFor(player.getCurrentGameId());
             if (currentGame == null || !currentGame.isGameOver()) {
                 sendMessage("ERROR:Invalid game state for rematch");
                 return;
@@ -621,7 +4234,7 @@ public class TicTacToeServer {
                 return;
             }
             
-            Game currentGame = activeGames.get(player.getCurrentGameId());
+            Game currentGame = gameFor(player.getCurrentGameId());
             if (currentGame == null) {
                 return;
             }
@@ -655,11 +4268,8 @@ public class TicTacToeServer {
         
         private void sendLeaderboard() {
             // Get top 10 players by rating
-            List<Player> topPlayers = activePlayers.values().stream()
-                .filter(p -> p.getTotalGames() >= 5) // Minimum games to be ranked
-                .sorted(Comparator.comparingInt(Player::getRating).reversed())
-                .limit(10)
-                .toList();
+            List<Player> ranked = getRanking();
+            List<Player> topPlayers = ranked.subList(0, Math.min(10, ranked.size()));
             
             StringBuilder leaderboard = new StringBuilder("LEADERBOARD:");
             for (int i = 0; i < topPlayers.size(); i++) {
@@ -675,15 +4285,46 @@ public class TicTacToeServer {
             sendMessage(leaderboard.toString());
         }
         
+        // Format: GET_LEADERBOARD:<offset>:<limit>, answered with LEADERBOARD_PAGE:<offset>:<total>:<entries>
+        private void sendLeaderboardPage(String args) {
+            int offset;
+            int limit;
+            try {
+                String[] parts = args.split(":");
+                offset = Math.max(0, Integer.parseInt(parts[0].trim()));
+                limit = Math.max(0, Math.min(LEADERBOARD_MAX_PAGE, Integer.parseInt(parts[1].trim())));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                sendMessage("ERROR:Invalid leaderboard range");
+                return;
+            }
+            
+            List<Player> ranked = getRanking();
+            int end = Math.min(ranked.size(), offset + limit);
+            
+            StringBuilder page = new StringBuilder("LEADERBOARD_PAGE:")
+                .append(offset).append(":").append(ranked.size()).append(":");
+            for (int i = offset; i < end; i++) {
+                Player p = ranked.get(i);
+                page.append(i+1).append(":")
+                    .append(p.getName()).append(":")
+                    .append(p.getRating()).append(":")
+                    .append(p.getWins()).append(":")
+                    .append(p.getLosses()).append(":")
+                    .append(p.getTies()).append("|");
+            }
+            
+            sendMessage(page.toString());
+        }
+        
         private void sendGameHistory() {
-            List<String> history = playerGameHistory.getOrDefault(playerId, new ArrayList<>());
+            List<String> history = playerGameHistory.getOrDefault(player.getKey(), new ArrayList<>());
             StringBuilder historyMsg = new StringBuilder("GAME_HISTORY:");
             
             // Get the last 10 games
             int startIndex = Math.max(0, history.size() - 10);
             for (int i = startIndex; i < history.size(); i++) {
                 String gameId = history.get(i);
-                Game game = activeGames.get(gameId);
+                Game game = gameFor(gameId);
                 
                 // If game is still active
                 if (game != null) {
@@ -700,70 +4341,163 @@ public class TicTacToeServer {
             sendMessage(historyMsg.toString());
         }
         
-        // Clean up when client disconnects
+        // Format: RESUME:<token>; moves this connection onto a detached (or stale) session
+        private void resumeSession(String token) {
+            String resumedId = sessionTokens.get(token.trim());
+            if (resumedId == null && handoffExpected()) {
+                // The old process may have finished draining after this one started
+                importHandoff();
+                resumedId = sessionTokens.get(token.trim());
+            }
+            Player resumed = resumedId != null ? activePlayers.get(resumedId) : null;
+            if (resumed == null || resumed == player) {
+                sendMessage("RESUME_FAILED");
+                return;
+            }
+            
+            ClientHandler previous = resumed.getClientHandler();
+            List<String> missed = resumed.attach(this);
+            if (missed == null) {
+                sendMessage("RESUME_FAILED");
+                return;
+            }
+            
+            // The old socket may still look alive if the drop was not noticed yet
+            if (previous != null && previous != this) {
+                previous.closeConnection();
+            }
+            
+            // Drop the fresh identity this connection was given on connect
+            removePlayer(player);
+            player = resumed;
+            playerId = resumed.getId();
+            
+            sendMessage("RESUMED:" + playerId + ":" + resumed.getSessionToken());
+            for (String message : missed) {
+                sendMessage(message);
+            }
+            
+            // Re-sync the game in case the missed messages were trimmed
+            if (player.getCurrentGameId() != null) {
+                Game game = gameFor(player.getCurrentGameId());
+                if (game != null) {
+                    game.resendState(playerId);
+                }
+            }
+            
+            logger.info("Player " + player.getName() + " (" + playerId + ") resumed session with " + 
+                        missed.size() + " missed messages");
+        }
+        
+        // Socket dropped: hold the session open for RESUME_GRACE_SECONDS before giving up on the player
+        private void connectionLost() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            running.set(false);
+            closeConnection();
+            currentConnections.decrementAndGet();
+            
+            // Nothing to hold if we never registered, another connection already took over,
+            // or the session now lives in the next process
+            if (player == null || player.getClientHandler() != this || handedOff) {
+                return;
+            }
+            
+            cancelMatch(player);
+            Player detached = player;
+            detached.detach(scheduler.schedule(() -> expireSession(detached), 
+                                               RESUME_GRACE_SECONDS, TimeUnit.SECONDS));
+            
+            logger.info("Player " + player.getName() + " (" + playerId + ") lost connection, holding session for " + 
+                        RESUME_GRACE_SECONDS + "s");
+        }
+        
+        // Clean up when client quits
         private void cleanup() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
             running.set(false);
+            closeConnection();
+            currentConnections.decrementAndGet();
             
-            try {
-                // Leave current lobby
-                GameLobby lobby = lobbies.get(player.getCurrentLobbyId());
-                if (lobby != null) {
-                    lobby.removePlayer(playerId);
-                }
-                
-                // Leave current game
-                if (player.getCurrentGameId() != null) {
-                    Game game = activeGames.get(player.getCurrentGameId());
-                    if (game != null) {
-                        game.playerDisconnected(playerId);
-                    }
-                }
-                
-                // Remove from waiting players
-                waitingPlayers.remove(playerId);
-                
-                // Close connections
-                if (out != null) out.close();
-                if (in != null) in.close();
-                if (socket != null && !socket.isClosed()) socket.close();
-                
-                // Remove player from active players
-                activePlayers.remove(playerId);
-                currentConnections.decrementAndGet();
-                
+            if (player != null && player.getClientHandler() == this) {
+                removePlayer(player);
                 logger.info("Player " + player.getName() + " (" + playerId + ") disconnected");
-                
-            } catch (IOException e) {
-                logger.warning("Error during cleanup for player " + playerId + ": " + e.getMessage());
             }
         }
         
-        // Send a message to this client
-        public void sendMessage(String message) {
-            if (out != null && running.get()) {
-                out.println(message);
+        private void closeConnection() {
+            running.set(false);
+            transport.close();
+        }
+        
+        // Send a message to this client; the message may be a reused buffer, so it is copied if it has to be kept
+        public void sendMessage(CharSequence message) {
+            if (open && running.get()) {
+                transport.send(message);
+            } else if (player != null && player.getClientHandler() == this) {
+                // Held for replay if the player resumes
+                player.bufferMessage(message.toString());
             }
         }
     }
     
     // Class to represent and manage a single game
     private static class Game {
+        // Rows, columns, then diagonals
+        private static final int[][] LINES = {
+            {0, 1, 2}, {3, 4, 5}, {6, 7, 8}, {0, 3, 6}, {1, 4, 7}, {2, 5, 8}, {0, 4, 8}, {2, 4, 6}
+        };
+        private static final int NO_RESULT = -1;
+        private static final int TIE = LINES.length;
+        
+        // Every message of the move path that does not carry a number is built once; boards and numbered
+        // messages are written into the game's reused buffer instead
+        private static final String[] X_WINS = new String[LINES.length];
+        private static final String[] O_WINS = new String[LINES.length];
+        static {
+            for (int i = 0; i < LINES.length; i++) {
+                String line = LINES[i][0] + "-" + LINES[i][1] + "-" + LINES[i][2];
+                X_WINS[i] = "GAME_OVER:X:" + line;
+                O_WINS[i] = "GAME_OVER:O:" + line;
+            }
+        }
+        
         private String gameId;
         private String player1Id; // X
         private String player2Id; // O
+        private final int player1Handle; // Registry handles, -1 for players homed on another node
+        private final int player2Handle;
         private char[] board;
         private char currentTurn; // 'X' or 'O'
         private boolean gameOver;
         private String winner = null; // Player ID of winner, null if tie or game in progress
         private Timestamp startTime;
-        private Timestamp endTime;
+        private long endTime; // Epoch ms, 0 while the game runs
         private String rematchRequester;
         private int[] winningLine;
+        private final StringBuilder out = new StringBuilder(64); // Reused for the messages that carry numbers; guarded by this
+        private Tournament tournament; // Set before start for tournament games
+        private volatile long lastMoveAt = System.currentTimeMillis();
+        
+        // Time control: remaining time per side as of the start of the current turn. The clock runs from
+        // start() on. A single wheel timeout per game stands for the flag; a turn whose deadline falls after
+        // the armed one keeps it, and when it fires early it is re-armed for the time actually left.
+        private long xClockMs;
+        private long oClockMs;
+        private long turnStartedAt = 0; // 0 while the clock is not running
+        private TimerWheel.Timeout flag;
+        private long flagDeadline; // Epoch ms the armed flag fires at
+        private final Runnable flagTask = this::flagFall;
         
         public Game(String gameId, String player1Id, String player2Id) {
             this.gameId = gameId;
             this.player1Id = player1Id;
             this.player2Id = player2Id;
+            this.player1Handle = activePlayers.handleOf(player1Id);
+            this.player2Handle = activePlayers.handleOf(player2Id);
             this.board = new char[9];
             Arrays.fill(board, ' ');
             this.currentTurn = 'X'; // X goes first
@@ -771,46 +4505,72 @@ public class TicTacToeServer {
             this.startTime = new Timestamp(System.currentTimeMillis());
         }
         
-        public void start() {
+        public synchronized void start() {
+            xClockMs = oClockMs = config.clockBaseSeconds * 1000L;
+            startClock();
+            
             // Notify players about game start
             sendToPlayer1("GAME_STARTED:X:" + gameId + ":" + getPlayer2().getName());
             sendToPlayer2("GAME_STARTED:O:" + gameId + ":" + getPlayer1().getName());
             
             // Notify player 1 (X) to make the first move
-            sendToPlayer1("YOUR_TURN");
+            sendToPlayer1(turnMessage());
             
             // Send initial board state
             sendBoardToPlayers();
         }
         
-        // Process a move from a player
-        public synchronized void makeMove(String playerId, int position) {
+        // Process a move from a player; seq is the client's prediction tag, or -1 for untagged moves
+        public synchronized void makeMove(String playerId, int position, int seq) {
             // Determine player's marker
             char playerMarker = (playerId.equals(player1Id)) ? 'X' : 'O';
             String playerTurnId = currentTurn == 'X' ? player1Id : player2Id;
             
             if (gameOver) {
-                sendToPlayer(playerId, "ERROR:Game is over");
+                rejectMove(playerId, seq, "Game is over");
+                return;
+            }
+            
+            // Frozen into the handoff file; the player makes the move again once resumed on the next process
+            if (handedOff) {
+                rejectMove(playerId, seq, "Server is restarting");
                 return;
             }
             
             if (!playerId.equals(playerTurnId)) {
-                sendToPlayer(playerId, "ERROR:Not your turn");
+                rejectMove(playerId, seq, "Not your turn");
                 return;
             }
             
             if (position < 0 || position > 8) {
-                sendToPlayer(playerId, "ERROR:Invalid position");
+                rejectMove(playerId, seq, "Invalid position");
                 return;
             }
             
             if (board[position] != ' ') {
-                sendToPlayer(playerId, "ERROR:Position already taken");
+                rejectMove(playerId, seq, "Position already taken");
                 return;
             }
             
+            // A move that arrives after the flag fell but before the wheel noticed still loses on time
+            if (turnStartedAt != 0) {
+                long left = clockOf(playerMarker) - (System.currentTimeMillis() - turnStartedAt);
+                if (left <= 0) {
+                    loseOnTime(playerMarker);
+                    return;
+                }
+                setClock(playerMarker, left + config.clockIncrementSeconds * 1000L);
+            }
+            
             // Make the move
             board[position] = playerMarker;
+            lastMoveAt = System.currentTimeMillis();
+            
+            // Confirm the prediction before the board so the client can drop it as the state lands
+            if (seq >= 0) {
+                out.setLength(0);
+                sendToPlayer(playerId, out.append("MOVE_ACK:").append(seq));
+            }
             
             // Send the updated board to both players
             sendBoardToPlayers();
@@ -819,20 +4579,77 @@ public class TicTacToeServer {
             checkGameStatus();
         }
         
+        private void rejectMove(String playerId, int seq, String reason) {
+            out.setLength(0);
+            if (seq < 0) {
+                sendToPlayer(playerId, out.append("ERROR:").append(reason));
+                return;
+            }
+            
+            // The client rolls its prediction back; tell it again if the turn is still its own
+            sendToPlayer(playerId, out.append("MOVE_REJECTED:").append(seq).append(':').append(reason));
+            if (!gameOver && playerId.equals(currentTurn == 'X' ? player1Id : player2Id)) {
+                sendToPlayer(playerId, turnMessage());
+            }
+        }
+        
+        // Stop the clock and describe the game for the handoff file as
+        // <id>:<X id>:<O id>:<board, '-' for empty>:<turn>:<X ms left>:<O ms left>, or null once it is over
+        public synchronized String freeze() {
+            if (gameOver) {
+                return null;
+            }
+            if (turnStartedAt != 0) {
+                setClock(currentTurn, Math.max(1, clockOf(currentTurn) - (System.currentTimeMillis() - turnStartedAt)));
+            }
+            stopClock();
+            return gameId + ":" + player1Id + ":" + player2Id + ":" + String.valueOf(board).replace(' ', '-') + ":" + 
+                   currentTurn + ":" + xClockMs + ":" + oClockMs;
+        }
+        
+        // Continue a game frozen by another process; the clock restarts from the time left at the freeze
+        public synchronized void restore(String cells, char turn, long xMs, long oMs) {
+            for (int i = 0; i < 9; i++) {
+                char c = cells.charAt(i);
+                if (c == 'X' || c == 'O') {
+                    board[i] = c;
+                }
+            }
+            currentTurn = turn;
+            xClockMs = xMs;
+            oClockMs = oMs;
+            startClock();
+        }
+        
+        // Board and turn for a player who just resumed their session
+        public synchronized void resendState(String playerId) {
+            sendToPlayer(playerId, boardMessage());
+            if (!gameOver && playerId.equals(currentTurn == 'X' ? player1Id : player2Id)) {
+                sendToPlayer(playerId, turnMessage());
+            }
+        }
+        
         private void sendBoardToPlayers() {
-            String boardMsg = "BOARD:" + String.valueOf(board);
+            CharSequence boardMsg = boardMessage();
             sendToPlayer1(boardMsg);
             sendToPlayer2(boardMsg);
         }
         
+        // Built in the shared buffer, so send it before building the next message
+        private CharSequence boardMessage() {
+            out.setLength(0);
+            return out.append("BOARD:").append(board);
+        }
+        
         private void checkGameStatus() {
-            CheckWinResult result = checkWinner();
+            int result = checkWinner();
             
-            if (result.hasWinner() || result.isTie()) {
+            if (result != NO_RESULT) {
                 gameOver = true;
-                endTime = new Timestamp(System.currentTimeMillis());
+                endTime = System.currentTimeMillis();
+                stopClock();
                 
-                if (result.isTie()) {
+                if (result == TIE) {
                     // It's a tie
                     sendToPlayer1("GAME_OVER:TIE");
                     sendToPlayer2("GAME_OVER:TIE");
@@ -843,20 +4660,17 @@ public class TicTacToeServer {
                     if (p1 != null) p1.incrementTies();
                     if (p2 != null) p2.incrementTies();
                 } else {
-                    // Someone won
-                    winningLine = result.getWinningLine();
+                    // Someone won: the player who just moved
+                    winningLine = LINES[result];
                     winner = currentTurn == 'X' ? player1Id : player2Id;
                     
-                    String winLineStr = String.join("-", Arrays.stream(winningLine)
-                                                         .mapToObj(String::valueOf)
-                                                         .toArray(String[]::new));
-                    
-                    sendToPlayer1("GAME_OVER:" + result.getWinner() + ":" + winLineStr);
-                    sendToPlayer2("GAME_OVER:" + result.getWinner() + ":" + winLineStr);
+                    String gameOverMsg = currentTurn == 'X' ? X_WINS[result] : O_WINS[result];
+                    sendToPlayer1(gameOverMsg);
+                    sendToPlayer2(gameOverMsg);
                     
                     // Update player statistics
-                    Player winnerPlayer = activePlayers.get(winner);
-                    Player loserPlayer = activePlayers.get(getOpponentId(winner));
+                    Player winnerPlayer = findPlayer(winner);
+                    Player loserPlayer = findPlayer(getOpponentId(winner));
                     
                     if (winnerPlayer != null) {
                         winnerPlayer.incrementWins();
@@ -868,95 +4682,51 @@ public class TicTacToeServer {
                         loserPlayer.updateRating(-10);  // Simple rating adjustment
                     }
                 }
+                gameEnded();
             } else {
                 // Switch turns
                 currentTurn = (currentTurn == 'X') ? 'O' : 'X';
+                if (turnStartedAt != 0) {
+                    startClock();
+                }
                 
                 // Notify the next player it's their turn
                 if (currentTurn == 'X') {
-                    sendToPlayer1("YOUR_TURN");
+                    sendToPlayer1(turnMessage());
                 } else {
-                    sendToPlayer2("YOUR_TURN");
+                    sendToPlayer2(turnMessage());
                 }
             }
         }
         
-        // Class to hold check winner result
-        private static class CheckWinResult {
-            private char winner;
-            private int[] winningLine;
-            
-            public CheckWinResult(char winner, int[] winningLine) {
-                this.winner = winner;
-                this.winningLine = winningLine;
-            }
-            
-            public boolean hasWinner() {
-                return winner != ' ' && winner != 'T';
-            }
-            
-            public boolean isTie() {
-                return winner == 'T';
-            }
-            
-            public char getWinner() {
-                return winner;
-            }
-            
-            public int[] getWinningLine() {
-                return winningLine;
-            }
-        }
-        
-        // Check if there's a winner or a tie
-        private CheckWinResult checkWinner() {
-            // Check rows
-            for (int i = 0; i < 9; i += 3) {
-                if (board[i] != ' ' && board[i] == board[i+1] && board[i] == board[i+2]) {
-                    return new CheckWinResult(board[i], new int[]{i, i+1, i+2});
+        // Index into LINES of a completed line, TIE once the board is full, or NO_RESULT
+        private int checkWinner() {
+            for (int i = 0; i < LINES.length; i++) {
+                int[] line = LINES[i];
+                char cell = board[line[0]];
+                if (cell != ' ' && cell == board[line[1]] && cell == board[line[2]]) {
+                    return i;
                 }
             }
             
-            // Check columns
-            for (int i = 0; i < 3; i++) {
-                if (board[i] != ' ' && board[i] == board[i+3] && board[i] == board[i+6]) {
-                    return new CheckWinResult(board[i], new int[]{i, i+3, i+6});
-                }
-            }
-            
-            // Check diagonals
-            if (board[0] != ' ' && board[0] == board[4] && board[0] == board[8]) {
-                return new CheckWinResult(board[0], new int[]{0, 4, 8});
-            }
-            if (board[2] != ' ' && board[2] == board[4] && board[2] == board[6]) {
-                return new CheckWinResult(board[2], new int[]{2, 4, 6});
-            }
-            
             // Check for tie (board full)
-            boolean boardFull = true;
             for (char cell : board) {
                 if (cell == ' ') {
-                    boardFull = false;
-                    break;
+                    return NO_RESULT;
                 }
             }
-
-            if (boardFull) {
-                return new CheckWinResult('T', null); // Tie
-            }
-            
-            // No winner yet
-            return new CheckWinResult(' ', null);
+            return TIE;
         }
         
         // Handle player disconnection
-        public void playerDisconnected(String playerId) {
+        public synchronized void playerDisconnected(String playerId) {
             if (gameOver) {
                 return;
             }
             
             gameOver = true;
-            endTime = new Timestamp(System.currentTimeMillis());
+            endTime = System.currentTimeMillis();
+            stopClock();
             
             // Find opponent
             String opponentId = getOpponentId(playerId);
@@ -965,8 +4735,8 @@ public class TicTacToeServer {
             winner = opponentId;
             
             // Update statistics
-            Player disconnectedPlayer = activePlayers.get(playerId);
-            Player opponentPlayer = activePlayers.get(opponentId);
+            Player disconnectedPlayer = findPlayer(playerId);
+            Player opponentPlayer = findPlayer(opponentId);
             
             if (disconnectedPlayer != null) {
                 disconnectedPlayer.incrementLosses();
@@ -981,43 +4751,193 @@ public class TicTacToeServer {
             }
             
             // Notify the opponent
-            Player opponent = activePlayers.get(opponentId);
-            if (opponent != null && opponent.getClientHandler() != null) {
-                opponent.getClientHandler().sendMessage("OPPONENT_DISCONNECTED");
+            Player opponent = findPlayer(opponentId);
+            if (opponent != null) {
+                opponent.deliver("OPPONENT_DISCONNECTED");
+            }
+            gameEnded();
+        }
+        
+        // Start the turn's clock; the armed flag is only replaced when this turn's deadline comes sooner
+        private void startClock() {
+            turnStartedAt = System.currentTimeMillis();
+            long deadline = turnStartedAt + clockOf(currentTurn);
+            if (flag == null || deadline < flagDeadline) {
+                armFlag(deadline);
+            }
+        }
+        
+        private void armFlag(long deadline) {
+            if (flag != null) {
+                flag.cancel();
+            }
+            flagDeadline = deadline;
+            flag = clockWheel.schedule(deadline - System.currentTimeMillis(), flagTask);
+        }
+        
+        private void stopClock() {
+            if (flag != null) {
+                flag.cancel();
+                flag = null;
+            }
+            turnStartedAt = 0;
+        }
+        
+        private synchronized void flagFall() {
+            if (flag != null && !flag.isExpired()) {
+                return; // A flag that expired just as this one replaced it
+            }
+            flag = null;
+            if (gameOver || turnStartedAt == 0) {
+                return;
+            }
+            long left = clockOf(currentTurn) - (System.currentTimeMillis() - turnStartedAt);
+            if (left <= 0) {
+                loseOnTime(currentTurn);
+            } else {
+                armFlag(System.currentTimeMillis() + left);
+            }
+        }
+        
+        private void loseOnTime(char marker) {
+            gameOver = true;
+            endTime = System.currentTimeMillis();
+            stopClock();
+            setClock(marker, 0);
+            
+            char winnerMarker = marker == 'X' ? 'O' : 'X';
+            String loserId = marker == 'X' ? player1Id : player2Id;
+            winner = getOpponentId(loserId);
+            sendToPlayer1("GAME_OVER:" + winnerMarker + ":TIME");
+            sendToPlayer2("GAME_OVER:" + winnerMarker + ":TIME");
+            
+            Player winnerPlayer = findPlayer(winner);
+            Player loserPlayer = findPlayer(loserId);
+            if (winnerPlayer != null) {
+                winnerPlayer.incrementWins();
+                winnerPlayer.updateRating(+15);
+            }
+            if (loserPlayer != null) {
+                loserPlayer.incrementLosses();
+                loserPlayer.updateRating(-10);
+            }
+            gameEnded();
+        }
+        
+        private long clockOf(char marker) {
+            return marker == 'X' ? xClockMs : oClockMs;
+        }
+        
+        private void setClock(char marker, long ms) {
+            if (marker == 'X') {
+                xClockMs = ms;
+            } else {
+                oClockMs = ms;
+            }
+        }
+        
+        // YOUR_TURN:<your ms left>:<opponent ms left>, or plain YOUR_TURN while the clock is not running.
+        // Built in the shared buffer, so send it before building the next message.
+        private CharSequence turnMessage() {
+            if (turnStartedAt == 0) {
+                return "YOUR_TURN";
+            }
+            long left = Math.max(0, clockOf(currentTurn) - (System.currentTimeMillis() - turnStartedAt));
+            out.setLength(0);
+            return out.append("YOUR_TURN:").append(left).append(':').append(clockOf(currentTurn == 'X' ? 'O' : 'X'));
+        }
+        
+        // No-show rule for tournament games: the player on turn loses if nothing has moved since the cutoff
+        public synchronized boolean forfeitIfIdle(long cutoffMs) {
+            if (gameOver || lastMoveAt > cutoffMs) {
+                return false;
+            }
+            String idleId = currentTurn == 'X' ? player1Id : player2Id;
+            Player idle = findPlayer(idleId);
+            playerDisconnected(idleId);
+            if (idle != null) {
+                idle.deliver("SERVER_INFO:You forfeited the game by not moving in time");
+            }
+            return true;
+        }
+        
+        // Every way a game can end comes through here
+        private void gameEnded() {
+            // Home nodes hold their players out of matchmaking until told the game is over
+            releaseRemote(getPlayer1());
+            releaseRemote(getPlayer2());
+            if (tournament != null) {
+                tournament.gameFinished(this);
+            }
+        }
+        
+        private void releaseRemote(Player player) {
+            if (player instanceof RemotePlayer && gameId.equals(player.getCurrentGameId())) {
+                player.setCurrentGameId(null);
             }
+            dropStub(player);
+        }
+        
+        public Tournament getTournament() {
+            return tournament;
+        }
+        
+        public void setTournament(Tournament tournament) {
+            this.tournament = tournament;
+        }
+        
+        public String getGameId() {
+            return gameId;
+        }
+        
+        public String getPlayer1Id() {
+            return player1Id;
+        }
+        
+        public String getPlayer2Id() {
+            return player2Id;
         }
         
         public void broadcastChat(String senderId, String message) {
-            Player sender = activePlayers.get(senderId);
+            Player sender = findPlayer(senderId);
             if (sender != null) {
-                String chatMessage = "GAME_CHAT:" + sender.getName() + ":" + message;
+                // The sender id lets clients tell their own lines apart from an opponent with the same name
+                String chatMessage = "GAME_CHAT:" + senderId + ":" + sender.getName() + ":" + message;
                 
                 sendToPlayer1(chatMessage);
                 sendToPlayer2(chatMessage);
             }
         }
         
-        private void sendToPlayer(String playerId, String message) {
-            Player player = activePlayers.get(playerId);
-            if (player != null && player.getClientHandler() != null) {
-                player.getClientHandler().sendMessage(message);
+        private void sendToPlayer(String playerId, CharSequence message) {
+            Player player = playerId.equals(player1Id) ? getPlayer1()
+                          : playerId.equals(player2Id) ? getPlayer2() : findPlayer(playerId);
+            sendToPlayer(player, message);
+        }
+        
+        private void sendToPlayer(Player player, CharSequence message) {
+            if (player != null) {
+                player.deliver(message);
             }
         }
         
-        private void sendToPlayer1(String message) {
-            sendToPlayer(player1Id, message);
+        private void sendToPlayer1(CharSequence message) {
+            sendToPlayer(getPlayer1(), message);
         }
         
-        private void sendToPlayer2(String message) {
-            sendToPlayer(player2Id, message);
+        private void sendToPlayer2(CharSequence message) {
+            sendToPlayer(getPlayer2(), message);
         }
         
+        // Local players resolve by handle; stale handles and remote players fall back to the id lookup
         private Player getPlayer1() {
-            return activePlayers.get(player1Id);
+            Player player = activePlayers.get(player1Handle);
+            return player != null ? player : findPlayer(player1Id);
         }
         
         private Player getPlayer2() {
-            return activePlayers.get(player2Id);
+            Player player = activePlayers.get(player2Handle);
+            return player != null ? player : findPlayer(player2Id);
         }
         
         public String getOpponentId(String playerId) {
@@ -0,0 +1,372 @@
+package TicTacToee;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Line-based connection shared by the server and the client, over TCP or in memory
+public interface Transport extends Closeable {
+
+    // Blocks until the next line arrives; returns null once the other side has gone away
+    String receive() throws IOException;
+
+    // Queue one line for the other side; silently dropped once the connection is closed
+    void send(String line);
+    
+    // Same, for a line the caller is about to reuse; transports that keep lines copy it first
+    default void send(CharSequence line) {
+        send(line.toString());
+    }
+
+    // Host address of the other side, for logging
+    String getRemoteAddress();
+
+    @Override
+    void close();
+
+    static Transport connect(String host, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            return new SocketTransport(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // Hands each line of a frame that may hold several to out, breaking where BufferedReader.readLine would,
+    // so transports that carry single lines deliver what a socket reader would have seen
+    private static void splitLines(String frame, Consumer<String> out) {
+        int start = 0;
+        int length = frame.length();
+        for (int i = 0; i < length; i++) {
+            char c = frame.charAt(i);
+            if (c == '\n' || c == '\r') {
+                out.accept(frame.substring(start, i));
+                if (c == '\r' && i + 1 < length && frame.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        if (start < length || start == 0) {
+            out.accept(frame.substring(start));
+        }
+    }
+    
+    private static boolean isMultiLine(String frame) {
+        return frame.indexOf('\n') >= 0 || frame.indexOf('\r') >= 0;
+    }
+
+    // Two connected ends for a server and a client living in the same JVM
+    static Transport[] localPair() {
+        LocalTransport a = new LocalTransport();
+        LocalTransport b = new LocalTransport();
+        a.peer = b;
+        b.peer = a;
+        return new Transport[]{a, b};
+    }
+
+    // Outbound lines are encoded into buffers owned by the transport and written straight to the socket,
+    // one write per line, so sending a line allocates nothing unless it is longer than ENCODE_CHARS
+    final class SocketTransport implements Transport {
+        private static final int ENCODE_CHARS = 8192;
+        private static final String NEWLINE = System.lineSeparator();
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final BufferedReader in;
+        private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(ENCODE_CHARS + NEWLINE.length());
+        private final ByteBuffer bytes = ByteBuffer.allocate((int) Math.ceil(chars.capacity() * encoder.maxBytesPerChar()));
+        private volatile boolean broken = false;
+
+        public SocketTransport(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        }
+
+        @Override
+        public String receive() throws IOException {
+            return in.readLine();
+        }
+
+        @Override
+        public void send(String line) {
+            send((CharSequence) line);
+        }
+
+        @Override
+        public synchronized void send(CharSequence line) {
+            if (broken) {
+                return;
+            }
+            try {
+                int length = line.length();
+                if (length > ENCODE_CHARS) {
+                    out.write((line + NEWLINE).getBytes(encoder.charset()));
+                    return;
+                }
+                chars.clear();
+                for (int i = 0; i < length; i++) {
+                    chars.put(line.charAt(i));
+                }
+                chars.put(NEWLINE);
+                chars.flip();
+                bytes.clear();
+                encoder.reset();
+                encoder.encode(chars, bytes, true);
+                encoder.flush(bytes);
+                out.write(bytes.array(), 0, bytes.position());
+            } catch (IOException e) {
+                // Dropped like any send after a close; the reader side sees the dead socket
+                broken = true;
+            }
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return socket.getInetAddress().getHostAddress();
+        }
+
+        @Override
+        public void close() {
+            broken = true;
+            try {
+                out.close();
+                in.close();
+                socket.close();
+            } catch (IOException e) {
+                // Already closed by the other side
+            }
+        }
+    }
+
+    // Transport fed by another thread: each side reads from its own lock-free inbox and parks when it is empty
+    abstract class QueuedTransport implements Transport {
+        private final Queue<String> inbox = new ConcurrentLinkedQueue<>();
+        private volatile Thread reader;
+        protected volatile boolean closed = false;
+
+        // True once nothing more can arrive from the other side
+        protected abstract boolean isPeerClosed();
+
+        @Override
+        public String receive() {
+            while (true) {
+                String line = inbox.poll();
+                if (line != null) {
+                    return line;
+                }
+                if (closed || isPeerClosed()) {
+                    // Lines sent just before the close are still delivered
+                    return inbox.poll();
+                }
+
+                // Publish ourselves before the re-check so a concurrent deliver cannot miss the unpark
+                reader = Thread.currentThread();
+                if (inbox.isEmpty() && !closed && !isPeerClosed()) {
+                    LockSupport.park(this);
+                }
+                reader = null;
+            }
+        }
+
+        // Hand a line to this side's reader
+        protected void deliver(String line) {
+            inbox.offer(line);
+            LockSupport.unpark(reader);
+        }
+
+        // Wake the reader so it notices a close
+        protected void wake() {
+            LockSupport.unpark(reader);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            wake();
+        }
+    }
+
+    // One end of an in-memory pair
+    final class LocalTransport extends QueuedTransport {
+        private LocalTransport peer;
+
+        private LocalTransport() {
+        }
+
+        @Override
+        protected boolean isPeerClosed() {
+            return peer.closed;
+        }
+
+        @Override
+        public void send(String line) {
+            if (closed || peer.closed) {
+                return;
+            }
+            if (isMultiLine(line)) {
+                splitLines(line, peer::deliver);
+            } else {
+                peer.deliver(line);
+            }
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "in-process";
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            peer.wake();
+        }
+    }
+
+    // Many sessions over one link. Lines travel as "<session> <line>"; "+<session>" opens a session
+    // and "-<session>" closes it. Either side may open sessions; run() demultiplexes until the link drops.
+    final class MuxLink implements Runnable {
+        private final Transport link;
+        private final Map<Integer, MuxSession> sessions = new ConcurrentHashMap<>();
+        private final Consumer<Transport> onRemoteOpen;
+        private volatile boolean closed = false;
+
+        // onRemoteOpen receives sessions opened by the other side; null if it never opens any
+        public MuxLink(Transport link, Consumer<Transport> onRemoteOpen) {
+            this.link = link;
+            this.onRemoteOpen = onRemoteOpen;
+        }
+
+        public Transport open(int sessionId) {
+            MuxSession session = new MuxSession(sessionId);
+            sessions.put(sessionId, session);
+            link.send("+" + sessionId);
+            if (closed) {
+                session.close();
+            }
+            return session;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while ((line = link.receive()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        dispatch(line);
+                    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                        // A garbled line is dropped on its own; the other sessions on the link carry on
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // A broken link ends every session on it
+            } finally {
+                closed = true;
+                link.close();
+                for (MuxSession session : sessions.values()) {
+                    session.wake();
+                }
+                sessions.clear();
+            }
+        }
+
+        private void dispatch(String line) {
+            char kind = line.charAt(0);
+            if (kind == '+') {
+                MuxSession session = new MuxSession(Integer.parseInt(line.substring(1)));
+                sessions.put(session.id, session);
+                if (onRemoteOpen != null) {
+                    onRemoteOpen.accept(session);
+                } else {
+                    session.close();
+                }
+            } else if (kind == '-') {
+                MuxSession session = sessions.remove(Integer.parseInt(line.substring(1)));
+                if (session != null) {
+                    session.remoteClosed = true;
+                    session.wake();
+                }
+            } else {
+                int space = line.indexOf(' ');
+                MuxSession session = sessions.get(Integer.parseInt(line.substring(0, space)));
+                if (session != null) {
+                    session.deliver(line.substring(space + 1));
+                }
+            }
+        }
+
+        // One logical connection on a MuxLink
+        final class MuxSession extends QueuedTransport {
+            private final int id;
+            private volatile boolean remoteClosed = false;
+
+            private MuxSession(int id) {
+                this.id = id;
+            }
+
+            // True if the session ended because the whole link went down, not because either side closed it
+            public boolean isLinkLost() {
+                return MuxLink.this.closed && !remoteClosed && !closed;
+            }
+
+            @Override
+            protected boolean isPeerClosed() {
+                return remoteClosed || MuxLink.this.closed;
+            }
+
+            // The link is framed by lines, so every line of a multi-line frame carries the session prefix;
+            // synchronized so the lines of one frame stay together for this session
+            @Override
+            public synchronized void send(String line) {
+                if (closed || isPeerClosed()) {
+                    return;
+                }
+                if (isMultiLine(line)) {
+                    splitLines(line, part -> link.send(id + " " + part));
+                } else {
+                    link.send(id + " " + line);
+                }
+            }
+
+            @Override
+            public String getRemoteAddress() {
+                return link.getRemoteAddress() + "#" + id;
+            }
+
+            @Override
+            public void close() {
+                if (closed) {
+                    return;
+                }
+                super.close();
+                if (sessions.remove(id) != null && !MuxLink.this.closed) {
+                    link.send("-" + id);
+                }
+            }
+        }
+    }
+}
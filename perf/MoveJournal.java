@@ -0,0 +1,152 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes perf/move-path.journal, the fixture for the server's move path allocation check:
+//
+//   java perf/MoveJournal.java perf/move-path.journal
+//   java -cp <classes> TicTacToee.TicTacToeServer --replay=perf/move-path.journal --max-alloc-per-move=2
+//
+// Connections queue with FIND_GAME and play scripted games through every ending: draws, wins for X and for
+// O on each kind of line, and games with rejected moves (square taken, out of turn, off the board, after the
+// end). Matchmaking is simulated the way the server pairs tickets (oldest ticket in the same rating band,
+// which plays X), so ratings drifting apart after decisive games do not desynchronise the replay. Record
+// layout follows TicTacToeServer.CommandJournal; regenerate the file whenever that format changes.
+public class MoveJournal {
+    private static final int MAGIC = 0x54544A32; // "TTJ2"
+    private static final int OPEN = 1;
+    private static final int COMMAND = 2;
+    private static final int CLOSE = 3;
+    private static final long RECORDED_AT = 1791331200000L; // Fixed, so the file is the same on every run
+    private static final long GAP_NANOS = 20_000_000L;
+
+    // Server defaults the simulation has to agree with
+    private static final int START_RATING = 1200;
+    private static final int RATING_BAND = 200;
+    private static final int WIN_POINTS = 15;
+    private static final int LOSS_POINTS = -10;
+
+    private static final int CONNECTIONS = 40;
+    private static final int ROUNDS = 30;
+
+    // Plies of each game as <X or O><position>; the result is what the server should conclude
+    private static final String[][] GAMES = {
+        {"X0", "O1", "X2", "O4", "X3", "O5", "X7", "O6", "X8"}, // Draw
+        {"X0", "O3", "X1", "O4", "X2"}, // X wins on the top row
+        {"X0", "O2", "X1", "O4", "X8", "O6"}, // O wins on the anti-diagonal
+        {"X4", "O0", "X8", "O2", "X6", "O1"}, // O wins on the top row
+        {"X0", "O1", "X4", "O2", "X8"}, // X wins on the diagonal
+        {"X1", "O0", "X4", "O3", "X7"}, // X wins on the middle column
+        // Rejected moves: taken square, out of turn, off the board, then a win and a move after the end
+        {"X4", "O4", "O0", "O1", "X9", "X2", "O1", "X1", "X6", "O8"},
+    };
+    private static final char[] WINNER = {' ', 'X', 'O', 'O', 'X', 'X', 'X'};
+
+    private final DataOutputStream out;
+    private final int[] rating = new int[CONNECTIONS + 1];
+    private final int[] seq = new int[CONNECTIONS + 1];
+    private final boolean[] waiting = new boolean[CONNECTIONS + 1];
+    private final Map<Integer, Deque<Integer>> pools = new HashMap<>();
+    private int gamesPlayed = 0;
+    private int moves = 0;
+
+    private MoveJournal(DataOutputStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java perf/MoveJournal.java <journal file>");
+            System.exit(1);
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[0])))) {
+            out.writeInt(MAGIC);
+            out.writeLong(RECORDED_AT);
+            MoveJournal journal = new MoveJournal(out);
+            journal.write();
+            System.out.println("Wrote " + args[0] + ": " + journal.gamesPlayed + " games, " + journal.moves + " moves");
+        }
+    }
+
+    private void write() throws IOException {
+        for (int c = 1; c <= CONNECTIONS; c++) {
+            rating[c] = START_RATING;
+            record(OPEN, c, null);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            // Everyone not already queued asks for a game; each ticket pairs with the oldest in its band
+            List<int[]> games = new ArrayList<>();
+            boolean[] queued = waiting.clone(); // Still queued from an earlier round, or paired in this one
+            for (int c = 1; c <= CONNECTIONS; c++) {
+                if (queued[c]) {
+                    continue;
+                }
+                record(COMMAND, c, "FIND_GAME");
+                Deque<Integer> pool = pools.computeIfAbsent(Math.floorDiv(rating[c], RATING_BAND), b -> new ArrayDeque<>());
+                Integer opponent = pool.pollFirst();
+                if (opponent == null) {
+                    pool.addLast(c);
+                    waiting[c] = true;
+                } else {
+                    waiting[opponent] = false;
+                    queued[opponent] = true;
+                    games.add(new int[]{opponent, c, gamesPlayed++ % GAMES.length});
+                }
+            }
+
+            // The round's games advance one ply at a time, interleaved like concurrent play
+            for (int ply = 0; ; ply++) {
+                boolean any = false;
+                for (int[] game : games) {
+                    String[] plies = GAMES[game[2]];
+                    if (ply < plies.length) {
+                        int c = plies[ply].charAt(0) == 'X' ? game[0] : game[1];
+                        record(COMMAND, c, "MOVE:" + plies[ply].substring(1) + ":" + (++seq[c]));
+                        moves++;
+                        any = true;
+                    }
+                }
+                if (!any) {
+                    break;
+                }
+            }
+            for (int[] game : games) {
+                char winner = WINNER[game[2]];
+                if (winner != ' ') {
+                    rating[winner == 'X' ? game[0] : game[1]] += WIN_POINTS;
+                    rating[winner == 'X' ? game[1] : game[0]] += LOSS_POINTS;
+                }
+            }
+        }
+        for (int c = 1; c <= CONNECTIONS; c++) {
+            record(CLOSE, c, null);
+        }
+    }
+
+    private void record(int kind, int connection, String text) throws IOException {
+        out.writeByte(kind);
+        writeVarLong(GAP_NANOS);
+        writeVarLong(connection);
+        if (text != null) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}